@@ -0,0 +1,52 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The dashboard refresh path without a window. {@code firstPage} does what
+ * {@link BookTableModel} does after a reload: count the rows, fetch the first page and build
+ * its cells. {@code fullCatalog} reads and builds every row, as the dashboard did before
+ * paging and as an export would.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DashboardRefreshBenchmark {
+    private static final int COLUMNS = 5;
+
+    @Benchmark
+    public List<Object[]> firstPage(SyntheticLibrary library) {
+        library.db.countBooks();
+        return buildRows(library.db.getCatalogPage(CatalogSort.DEFAULT, null, BookTableModel.PAGE_SIZE));
+    }
+
+    @Benchmark
+    public List<Object[]> fullCatalog(SyntheticLibrary library) {
+        return buildRows(library.db.getCatalogRows());
+    }
+
+    private static List<Object[]> buildRows(List<CatalogRow> catalog) {
+        List<Object[]> rows = new ArrayList<>(catalog.size());
+        for (int i = 0; i < catalog.size(); i++) {
+            Object[] cells = new Object[COLUMNS];
+            cells[0] = i + 1;
+            for (int column = 1; column < COLUMNS; column++) {
+                cells[column] = BookTableModel.cellValue(catalog.get(i), column);
+            }
+            rows.add(cells);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,855 @@
+package org.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Headless throughput checks for {@link DatabaseManager} against a synthetic database.
+ * Usage: {@code DatabaseBenchmark pool [books]} prints ops/sec for point operations;
+ * {@code DatabaseBenchmark refresh [books...]} prints dashboard refresh latency per catalog size;
+ * {@code DatabaseBenchmark search [books...]} compares full-text search with a LIKE scan;
+ * {@code DatabaseBenchmark plans} prints query plans before and after the indexing migration;
+ * {@code DatabaseBenchmark import [rows...]} compares addBook per row with {@link CatalogImporter};
+ * {@code DatabaseBenchmark contention [books]} has many virtual threads borrow and return the same few
+ * books, once with check-then-update and once with tryBorrow/tryReturn, and counts double borrows;
+ * {@code DatabaseBenchmark groupcommit [books]} compares per-call commits with {@link GroupCommitWriter};
+ * {@code DatabaseBenchmark cache [books...]} times {@link CatalogCache} lookups and measures its memory per book;
+ * {@code DatabaseBenchmark login [books]} prints logins/sec at the current {@link PasswordHasher} cost, sequentially
+ * and in a burst, with getBookById latency during the burst and the cost of checking a session token;
+ * {@code DatabaseBenchmark loans [books...]} fills ten loans per book of history, then compares the loan
+ * views over the running totals with the same answers computed from the history, and times borrowing
+ * with and without the history triggers;
+ * {@code DatabaseBenchmark coldstart [books...]} times the first screen of the dashboard from a fresh pool
+ * against the same rows from a {@link CatalogSnapshot}, and how long writing the snapshot takes;
+ * {@code DatabaseBenchmark filter [books...]} times building a {@link CatalogIndex}, ranking its titles and authors,
+ * and filtered, sorted queries on it, on the common pool and on one thread, against the same queries in SQL;
+ * {@code DatabaseBenchmark maintenance [books...]} deletes the newest 30% of the books, then runs every
+ * {@link MaintenanceScheduler} task while another thread looks up books, and prints each task's duration
+ * and bytes reclaimed with lookup latency, throttled and unthrottled, against lookups alone.
+ */
+public class DatabaseBenchmark {
+    private static final long WARMUP_MS = 1_000;
+    private static final long MEASURE_MS = 3_000;
+    /** The password of every user in {@link #createDatabase}. */
+    static final String PASSWORD = "password";
+
+    public static void main(String[] args) throws Exception {
+        String scenario = args.length > 0 ? args[0] : "pool";
+        if (scenario.equals("plans")) {
+            runQueryPlans();
+            return;
+        }
+        int[] sizes = args.length > 1
+                ? Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray()
+                : scenario.equals("pool") || scenario.equals("contention") || scenario.equals("groupcommit") || scenario.equals("login") ? new int[]{10_000}
+                : scenario.equals("cache") || scenario.equals("maintenance") ? new int[]{100_000}
+                : scenario.equals("loans") ? new int[]{10_000, 100_000} : new int[]{10_000, 100_000, 1_000_000};
+        for (int books : sizes) {
+            File dbFile = createDatabase(books, Math.max(1, books / 100));
+            String url = "jdbc:sqlite:" + dbFile.getAbsolutePath();
+            try {
+                switch (scenario) {
+                    case "pool" -> runPoolComparison(url, books);
+                    case "refresh" -> runRefreshComparison(url, books);
+                    case "search" -> runSearchComparison(url, books);
+                    case "import" -> runImportComparison(url, books);
+                    case "contention" -> runContentionComparison(url, books);
+                    case "groupcommit" -> runGroupCommitComparison(url, books);
+                    case "cache" -> runCacheComparison(url, books);
+                    case "login" -> runLoginComparison(url, books);
+                    case "loans" -> runLoanComparison(url, books);
+                    case "coldstart" -> runColdStartComparison(url, books);
+                    case "filter" -> runFilterComparison(url, books);
+                    case "maintenance" -> runMaintenanceComparison(url, books);
+                    default -> throw new IllegalArgumentException("Unknown scenario: " + scenario);
+                }
+            } finally {
+                Files.deleteIfExists(dbFile.toPath());
+            }
+        }
+    }
+
+    private static void runPoolComparison(String url, int books) throws SQLException {
+        System.out.printf("getBookById / updateBookBorrowStatus over %,d books%n", books);
+
+        report("getBookById (connection per call)", id -> legacyGetBookById(url, id), books);
+        report("updateBookBorrowStatus (connection per call)", id -> legacyUpdateBorrowStatus(url, id, id % 7), books);
+
+        try (ConnectionPool pool = new ConnectionPool(url, 4)) {
+            DatabaseManager db = new DatabaseManager(pool);
+            report("getBookById (pooled)", db::getBookById, books);
+            report("updateBookBorrowStatus (pooled)", id -> db.updateBookBorrowStatus(id, id % 7), books);
+        }
+    }
+
+    private static void runRefreshComparison(String url, int books) {
+        System.out.printf("Dashboard refresh over %,d books%n", books);
+        try (ConnectionPool pool = new ConnectionPool(url, 4)) {
+            DatabaseManager db = new DatabaseManager(pool);
+            timeRefresh("getAllBooks + getBorrowerName per row", () -> {
+                List<Object[]> table = new ArrayList<>();
+                int serialNumber = 1;
+                for (Book book : db.getAllBooks()) {
+                    table.add(new Object[]{serialNumber++, book.getId(), book.getTitle(), book.getAuthor(),
+                            db.getBorrowerName(book.getBorrowedByUserId())});
+                }
+                return table.size();
+            });
+            timeRefresh("getCatalogRows (joined)", () -> {
+                List<Object[]> table = new ArrayList<>();
+                int serialNumber = 1;
+                for (CatalogRow row : db.getCatalogRows()) {
+                    table.add(new Object[]{serialNumber++, row.id(), row.title(), row.author(), row.status()});
+                }
+                return table.size();
+            });
+        }
+    }
+
+    private static void timeRefresh(String name, IntSupplier refresh) {
+        refresh.getAsInt();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            refresh.getAsInt();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("  %-50s %,12.1f ms%n", name, best / 1e6);
+    }
+
+    private static void runSearchComparison(String url, int books) throws SQLException {
+        System.out.printf("Search over %,d books (first 50 results)%n", books);
+        String[] queries = {WORDS[7], WORDS[42].substring(0, 3), WORDS[3] + " " + WORDS[11].substring(0, 2), "zzzz"};
+        try (ConnectionPool pool = new ConnectionPool(url, 4);
+             Connection conn = DriverManager.getConnection(url);
+             PreparedStatement like = conn.prepareStatement("SELECT id, title, author FROM books WHERE title LIKE ? OR author LIKE ? ORDER BY title LIMIT 50")) {
+            DatabaseManager db = new DatabaseManager(pool);
+            for (String query : queries) {
+                timeRefresh("searchBooks(\"" + query + "\")", () -> db.searchBooks(query, 50, 0).size());
+                timeRefresh("LIKE '%" + query + "%'", () -> {
+                    try {
+                        like.setString(1, "%" + query + "%");
+                        like.setString(2, "%" + query + "%");
+                        int found = 0;
+                        try (ResultSet rs = like.executeQuery()) {
+                            while (rs.next()) found++;
+                        }
+                        return found;
+                    } catch (SQLException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            }
+        }
+    }
+
+    private static void runImportComparison(String url, int rows) throws SQLException, IOException {
+        System.out.printf("Importing %,d rows into a catalog of %,d books%n", rows, rows);
+        File csv = File.createTempFile("library-import-", ".csv");
+        try {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            try (var out = Files.newBufferedWriter(csv.toPath())) {
+                out.write("title,author,image_path\n");
+                for (int i = 0; i < rows; i++) {
+                    out.write(word(random) + " " + word(random) + " " + word(random) + "," + capitalize(word(random)) + " " + capitalize(word(random)) + ",\n");
+                }
+            }
+            try (ConnectionPool pool = new ConnectionPool(url, 4)) {
+                DatabaseManager db = new DatabaseManager(pool);
+                int single = Math.min(rows, 5_000);
+                long start = System.nanoTime();
+                for (int i = 0; i < single; i++) {
+                    db.addBook(word(random) + " " + word(random), capitalize(word(random)), "");
+                }
+                System.out.printf("  %-50s %,12.0f rows/sec%n", "addBook per row", single * 1e9 / (System.nanoTime() - start));
+                CatalogImporter.Progress result = db.importBooks(csv.toPath(), CatalogImporter.DEFAULT_BATCH_SIZE, true, progress -> {});
+                System.out.printf("  %-50s %,12.0f rows/sec%n", "CatalogImporter (" + CatalogImporter.DEFAULT_BATCH_SIZE + " rows per transaction)", result.rowsPerSecond());
+            }
+        } finally {
+            Files.deleteIfExists(csv.toPath());
+        }
+    }
+
+    private static final int HOT_BOOKS = 8;
+    private static final int BORROWER_THREADS = 64;
+    private static final Duration HOLD_TIME = Duration.ofMillis(1);
+
+    /** Borrows one book for one user; returns true if the caller now believes it holds the book. */
+    private interface BorrowAttempt {
+        boolean borrow(DatabaseManager db, int bookId, int userId);
+    }
+
+    private interface GiveBack {
+        void giveBack(DatabaseManager db, int bookId, int userId);
+    }
+
+    private static void runContentionComparison(String url, int books) throws SQLException {
+        System.out.printf("%d virtual threads borrowing and returning %d hot books out of %,d%n", BORROWER_THREADS, HOT_BOOKS, books);
+        try (ConnectionPool pool = new ConnectionPool(url, 4)) {
+            DatabaseManager db = new DatabaseManager(pool);
+            for (int bookId = 1; bookId <= HOT_BOOKS; bookId++) {
+                db.updateBookBorrowStatus(bookId, 0);
+            }
+            // The pre-tryBorrow dashboard flow: read availability, then update in a second statement.
+            runContention("getBookById + updateBookBorrowStatus", db, (d, bookId, userId) -> {
+                Book book = d.getBookById(bookId);
+                if (book == null || !book.isAvailable()) return false;
+                Thread.yield(); // the dashboard hopped to the EDT and back to a new task between the two
+                d.updateBookBorrowStatus(bookId, userId);
+                return true;
+            }, (d, bookId, userId) -> d.updateBookBorrowStatus(bookId, 0));
+            runContention("tryBorrow + tryReturn", db,
+                    (d, bookId, userId) -> d.tryBorrow(bookId, userId) == LoanOutcome.BORROWED,
+                    DatabaseManager::tryReturn);
+        }
+    }
+
+    private static void runContention(String name, DatabaseManager db, BorrowAttempt borrow, GiveBack giveBack) {
+        // Who each thread believes holds each hot book. A borrow that finds the slot taken is a double borrow.
+        AtomicIntegerArray holders = new AtomicIntegerArray(HOT_BOOKS + 1);
+        LongAdder attempts = new LongAdder();
+        LongAdder borrows = new LongAdder();
+        LongAdder doubleBorrows = new LongAdder();
+        long deadline = System.nanoTime() + MEASURE_MS * 1_000_000;
+        long start = System.nanoTime();
+        try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int t = 0; t < BORROWER_THREADS; t++) {
+                int userId = 1 + t;
+                threads.execute(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline) {
+                        int bookId = 1 + random.nextInt(HOT_BOOKS);
+                        attempts.increment();
+                        boolean borrowed = borrow.borrow(db, bookId, userId);
+                        if (borrowed) {
+                            borrows.increment();
+                            if (!holders.compareAndSet(bookId, 0, userId)) {
+                                doubleBorrows.increment();
+                                borrowed = false; // another thread also thinks it has this book; let it return it
+                            }
+                        }
+                        try {
+                            // Keep the book, or wait before trying again, long enough for other threads to run.
+                            Thread.sleep(HOLD_TIME);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        if (borrowed) {
+                            holders.set(bookId, 0);
+                            giveBack.giveBack(db, bookId, userId);
+                        }
+                    }
+                });
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long tried = attempts.sum();
+        System.out.printf("  %-40s %,10.0f attempts/sec %,9.0f borrows/sec %6.1f%% conflicts %,8d double borrows%n",
+                name, tried / seconds, borrows.sum() / seconds, 100.0 * (tried - borrows.sum()) / Math.max(1, tried), doubleBorrows.sum());
+        for (int bookId = 1; bookId <= HOT_BOOKS; bookId++) {
+            db.updateBookBorrowStatus(bookId, 0);
+        }
+    }
+
+    private static void runGroupCommitComparison(String url, int books) throws SQLException {
+        System.out.printf("updateBookBorrowStatus from %d virtual threads over %,d books%n", BORROWER_THREADS, books);
+        for (String synchronous : new String[]{"NORMAL", "FULL"}) {
+            try (ConnectionPool pool = new ConnectionPool(url, 4)) {
+                try (ConnectionPool.PooledConnection writer = pool.acquireWriter("setSynchronous");
+                     Statement stmt = writer.connection().createStatement()) {
+                    stmt.execute("PRAGMA synchronous = " + synchronous);
+                }
+                timeConcurrentWrites("one commit per call, synchronous=" + synchronous, new DatabaseManager(pool), books, null);
+            }
+        }
+        for (GroupCommitWriter.Config config : new GroupCommitWriter.Config[]{
+                new GroupCommitWriter.Config(64, Duration.ZERO), GroupCommitWriter.Config.DEFAULT,
+                new GroupCommitWriter.Config(256, Duration.ofMillis(2))}) {
+            try (ConnectionPool pool = new ConnectionPool(url, 4)) {
+                GroupCommitWriter writer = pool.enableGroupCommit(config);
+                timeConcurrentWrites("group commit, " + config.window().toMillis() + " ms / " + config.maxBatch() + " ops, FULL",
+                        new DatabaseManager(pool), books, writer);
+            }
+        }
+    }
+
+    private static void timeConcurrentWrites(String name, DatabaseManager db, int books, GroupCommitWriter writer) {
+        LongAdder ops = new LongAdder();
+        LongAdder latencyNanos = new LongAdder();
+        long deadline = System.nanoTime() + MEASURE_MS * 1_000_000;
+        long start = System.nanoTime();
+        try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int t = 0; t < BORROWER_THREADS; t++) {
+                int userId = 1 + t;
+                threads.execute(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline) {
+                        long begin = System.nanoTime();
+                        db.updateBookBorrowStatus(1 + random.nextInt(books), random.nextBoolean() ? userId : 0);
+                        latencyNanos.add(System.nanoTime() - begin);
+                        ops.increment();
+                    }
+                });
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long commits = writer == null ? ops.sum() : writer.commits();
+        System.out.printf("  %-45s %,10.0f ops/sec %,9.0f commits/sec %6.1f ops/commit %7.2f ms avg latency%n",
+                name, ops.sum() / seconds, commits / seconds, (double) ops.sum() / Math.max(1, commits), latencyNanos.sum() / 1e6 / Math.max(1, ops.sum()));
+    }
+
+    private static void runCacheComparison(String url, int books) {
+        System.out.printf("Point lookups over %,d books%n", books);
+        try (ConnectionPool pool = new ConnectionPool(url, 4)) {
+            DatabaseManager db = new DatabaseManager(pool);
+            report("getBookById (pooled)", db::getBookById, books);
+
+            // Four lookups in five go to a hot tenth of the catalog, which fits in the cache.
+            CatalogCache skewed = new CatalogCache(db);
+            int hotBooks = Math.max(1, books / 10);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            report("CatalogCache.getBookById (80% on hot 10%)",
+                    id -> lookUp(skewed, random.nextInt(5) < 4 ? 1 + id % hotBooks : id), books);
+            CatalogCache.MapStats stats = skewed.stats().books();
+            System.out.printf("  %-50s %,12.1f %% (%,d entries, %,d evictions)%n", "  hit rate", stats.hitRate() * 100, stats.entries(), stats.evictions());
+
+            int warm = Math.min(books, CatalogCache.DEFAULT_BOOKS);
+            CatalogCache cache = new CatalogCache(db);
+            for (int id = 1; id <= warm; id++) lookUp(cache, id);
+            long hits = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < 10_000_000; i++) {
+                if (lookUp(cache, 1 + random.nextInt(warm)) != null) hits++;
+            }
+            System.out.printf("  %-50s %,12.0f ns/lookup (%,d hits)%n", "CatalogCache.getBookById (warm)", (System.nanoTime() - start) / 1e7, hits);
+
+            long before = usedHeap();
+            CatalogCache full = new CatalogCache(db, books, CatalogCache.DEFAULT_USERS);
+            for (int id = 1; id <= books; id++) lookUp(full, id);
+            long after = usedHeap();
+            System.out.printf("  %-50s %,12.0f bytes/book (%,d books, %,.1f MB)%n", "CatalogCache memory",
+                    (double) (after - before) / books, full.stats().books().entries(), (after - before) / 1e6);
+        }
+    }
+
+    private static final int LOGIN_BURST = 256;
+
+    private static void runLoginComparison(String url, int books) {
+        PasswordHasher hasher = PasswordHasher.shared();
+        System.out.printf("Logins at %,d PBKDF2 iterations on %d hashing threads, %,d books%n",
+                hasher.getIterations(), Math.max(1, Runtime.getRuntime().availableProcessors() / 2), books);
+        try (ConnectionPool pool = new ConnectionPool(url, 4)) {
+            DatabaseManager db = new DatabaseManager(pool);
+            db.loginUser("user1@example.org", PASSWORD);
+            timeLogins("loginUser (right password)", () -> db.loginUser("user1@example.org", PASSWORD) != null);
+            timeLogins("loginUser (wrong password)", () -> db.loginUser("user1@example.org", "wrong") == null);
+            timeLogins("loginUser (unknown email)", () -> db.loginUser("nobody@example.org", PASSWORD) == null);
+
+            LatencyHistogram quiet = timeLookups(db, books, MEASURE_MS * 1_000_000, () -> false);
+            LongAdder loggedIn = new LongAdder();
+            LongAdder rejected = new LongAdder();
+            long start = System.nanoTime();
+            LatencyHistogram busy;
+            try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < LOGIN_BURST; i++) {
+                    int user = 1 + i % Math.max(1, books / 100);
+                    threads.execute(() -> {
+                        try {
+                            if (db.loginUser("user" + user + "@example.org", PASSWORD) != null) loggedIn.increment();
+                        } catch (RejectedExecutionException e) {
+                            rejected.increment();
+                        }
+                    });
+                }
+                busy = timeLookups(db, books, Long.MAX_VALUE, () -> loggedIn.sum() + rejected.sum() >= LOGIN_BURST);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("  %-50s %,12.1f logins/sec (%,d logged in, %,d turned away, %.1f s)%n",
+                    LOGIN_BURST + " logins at once", loggedIn.sum() / seconds, loggedIn.sum(), rejected.sum(), seconds);
+            printLookups("getBookById alone", quiet.snapshot());
+            printLookups("getBookById during the burst", busy.snapshot());
+
+            SessionManager sessions = new SessionManager(Duration.ofHours(8));
+            String token = sessions.create(new User(1, "User 1", "user1@example.org"));
+            int found = 0;
+            long begin = System.nanoTime();
+            for (int i = 0; i < 10_000_000; i++) {
+                if (sessions.authenticate(token) != null) found++;
+            }
+            System.out.printf("  %-50s %,12.0f ns/check (%,d found)%n", "SessionManager.authenticate", (System.nanoTime() - begin) / 1e7, found);
+        }
+    }
+
+    private static void timeLogins(String name, BooleanSupplier login) {
+        int logins = 0;
+        int expected = 0;
+        long start = System.nanoTime();
+        long deadline = start + MEASURE_MS * 1_000_000;
+        while (System.nanoTime() < deadline) {
+            if (login.getAsBoolean()) expected++;
+            logins++;
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("  %-50s %,12.1f logins/sec %8.1f ms/login (%d of %d as expected)%n",
+                name, logins * 1e9 / elapsed, elapsed / 1e6 / logins, expected, logins);
+    }
+
+    // Looks up random books on the calling thread until done says so or the time is up.
+    private static LatencyHistogram timeLookups(DatabaseManager db, int books, long durationNanos, BooleanSupplier done) {
+        LatencyHistogram latency = new LatencyHistogram();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long start = System.nanoTime();
+        while (!done.getAsBoolean() && System.nanoTime() - start < durationNanos) {
+            long begin = System.nanoTime();
+            db.getBookById(1 + random.nextInt(books));
+            latency.record(System.nanoTime() - begin);
+        }
+        return latency;
+    }
+
+    private static void printLookups(String name, LatencyHistogram.Snapshot latency) {
+        System.out.printf("  %-50s %,12d lookups p50 %.3f ms p99 %.3f ms max %.3f ms%n", name, latency.count(),
+                LatencyHistogram.Snapshot.millis(latency.p50Nanos()), LatencyHistogram.Snapshot.millis(latency.p99Nanos()),
+                LatencyHistogram.Snapshot.millis(latency.maxNanos()));
+    }
+
+    private static final int LOANS_PER_BOOK = 10;
+
+    private static void runLoanComparison(String url, int books) throws SQLException {
+        int users = Math.max(1, books / 100);
+        int events = books * LOANS_PER_BOOK;
+        System.out.printf("Loan views over %,d history rows, %,d books and %,d users%n", events, books, users);
+        long start = System.nanoTime();
+        try (Connection conn = DriverManager.getConnection(url)) {
+            conn.setAutoCommit(false);
+            // Written straight into loans, a year of borrow and return pairs; the loans triggers keep the totals.
+            try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO loans(book_id, user_id, returned, at) VALUES (?, ?, ?, ?)")) {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long now = System.currentTimeMillis();
+                for (int i = 0; i < events; i += 2) {
+                    int bookId = 1 + random.nextInt(books);
+                    int userId = 1 + random.nextInt(users);
+                    long at = now - random.nextLong(Duration.ofDays(365).toMillis());
+                    for (int returned = 0; returned <= 1; returned++) {
+                        pstmt.setInt(1, bookId);
+                        pstmt.setInt(2, userId);
+                        pstmt.setInt(3, returned);
+                        pstmt.setLong(4, at + returned * Duration.ofDays(14).toMillis());
+                        pstmt.addBatch();
+                    }
+                    if (i % 10_000 == 0) pstmt.executeBatch();
+                }
+                pstmt.executeBatch();
+            }
+            conn.commit();
+        }
+        System.out.printf("  %-50s %,12.0f rows/sec%n", "history with running totals", events * 1e9 / (System.nanoTime() - start));
+
+        try (ConnectionPool pool = new ConnectionPool(url, 4);
+             Connection conn = DriverManager.getConnection(url)) {
+            DatabaseManager db = new DatabaseManager(pool);
+            timeRefresh("getMostBorrowed(50)", () -> db.getMostBorrowed(50).size());
+            timeRefresh("most borrowed, GROUP BY over loans", () -> countRows(conn,
+                    "SELECT book_id, COUNT(*) AS n FROM loans WHERE NOT returned GROUP BY book_id ORDER BY n DESC, book_id LIMIT 50"));
+            timeRefresh("getDailyLoanVolume(30)", () -> db.getDailyLoanVolume(30).size());
+            timeRefresh("daily volume, GROUP BY over loans", () -> countRows(conn,
+                    "SELECT date(at / 1000, 'unixepoch') AS day, SUM(NOT returned), SUM(returned) FROM loans GROUP BY day ORDER BY day DESC LIMIT 30"));
+            timeRefresh("getActiveLoanCount", () -> db.getActiveLoanCount(1));
+            timeRefresh("active loans, SUM over the user's loans", () -> countRows(conn,
+                    "SELECT SUM(CASE WHEN returned THEN -1 ELSE 1 END) FROM loans WHERE user_id = 1"));
+            timeRefresh("getLoanHistory(200)", () -> db.getLoanHistory(1, 200).size());
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            IntConsumer borrowAndReturn = id -> {
+                int userId = 1 + random.nextInt(users);
+                db.tryBorrow(id, userId);
+                db.tryReturn(id, userId);
+            };
+            report("tryBorrow + tryReturn, with history", borrowAndReturn, books);
+            try (Statement stmt = conn.createStatement()) {
+                for (String trigger : new String[]{"books_loan_insert", "books_loan_update", "books_loan_delete"}) {
+                    stmt.execute("DROP TRIGGER " + trigger);
+                }
+            }
+            report("tryBorrow + tryReturn, without history", borrowAndReturn, books);
+        }
+    }
+
+    private static int countRows(Connection conn, String sql) {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            int rows = 0;
+            while (rs.next()) rows++;
+            return rows;
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final int COLD_STARTS = 5;
+
+    // The dashboard's first paint needs the row count and the first page in the default order.
+    private static void runColdStartComparison(String url, int books) throws SQLException, IOException {
+        System.out.printf("First screen of the dashboard over %,d books (median of %d)%n", books, COLD_STARTS);
+        Path snapshotFile = Files.createTempFile("library-snapshot-", ".snapshot");
+        try {
+            long[] times = new long[COLD_STARTS];
+            long size = 0;
+            for (int i = 0; i < COLD_STARTS; i++) {
+                try (ConnectionPool pool = new ConnectionPool(url, 4)) {
+                    long start = System.nanoTime();
+                    new DatabaseManager(pool).writeCatalogSnapshot(snapshotFile);
+                    times[i] = System.nanoTime() - start;
+                }
+                size = CatalogSnapshot.open(snapshotFile).byteSize();
+            }
+            System.out.printf("  %-50s %,12.1f ms (%,.1f MB, %.1f bytes/book)%n", "writeCatalogSnapshot", median(times) / 1e6, size / 1e6, (double) size / books);
+
+            for (int i = 0; i < COLD_STARTS; i++) {
+                long start = System.nanoTime();
+                try (ConnectionPool pool = new ConnectionPool(url, 4)) {
+                    DatabaseManager db = new DatabaseManager(pool);
+                    int rows = db.countBooks();
+                    List<CatalogRow> page = db.getCatalogPage(CatalogSort.DEFAULT, null, Math.min(rows, BookTableModel.PAGE_SIZE));
+                    if (page.isEmpty() && rows > 0) throw new IllegalStateException("No first page");
+                    times[i] = System.nanoTime() - start;
+                }
+            }
+            System.out.printf("  %-50s %,12.1f ms%n", "new pool, countBooks + getCatalogPage", median(times) / 1e6);
+
+            for (int i = 0; i < COLD_STARTS; i++) {
+                long start = System.nanoTime();
+                CatalogSnapshot snapshot = CatalogSnapshot.open(snapshotFile);
+                List<CatalogRow> page = snapshot.rows(0, Math.min(snapshot.size(), BookTableModel.PAGE_SIZE));
+                if (page.isEmpty() && snapshot.size() > 0) throw new IllegalStateException("No first page");
+                times[i] = System.nanoTime() - start;
+            }
+            System.out.printf("  %-50s %,12.1f ms%n", "CatalogSnapshot.open + first page", median(times) / 1e6);
+
+            // What the background check adds once the snapshot is on screen.
+            for (int i = 0; i < COLD_STARTS; i++) {
+                long start = System.nanoTime();
+                try (ConnectionPool pool = new ConnectionPool(url, 4)) {
+                    new DatabaseManager(pool).getCatalogVersion();
+                    times[i] = System.nanoTime() - start;
+                }
+            }
+            System.out.printf("  %-50s %,12.1f ms%n", "  then new pool + getCatalogVersion", median(times) / 1e6);
+        } finally {
+            CatalogSnapshot.delete(snapshotFile);
+        }
+    }
+
+    private static final int FILTER_RUNS = 7;
+
+    private record FilterCase(String name, CatalogIndex.Filter filter, CatalogSort sort, String sql) { }
+
+    private static final FilterCase[] FILTER_CASES = {
+            new FilterCase("everything by title", CatalogIndex.Filter.NONE, CatalogSort.DEFAULT,
+                    "SELECT b.id FROM books b ORDER BY b.title, b.id"),
+            new FilterCase("author 'ka' + available, by title", new CatalogIndex.Filter("ka", true, 0), CatalogSort.DEFAULT,
+                    "SELECT b.id FROM books b WHERE b.author LIKE 'ka%' AND b.borrowed_by_user_id IS NULL ORDER BY b.title, b.id"),
+            new FilterCase("available, by author descending", new CatalogIndex.Filter(null, true, 0), new CatalogSort(CatalogColumn.AUTHOR, false),
+                    "SELECT b.id FROM books b WHERE b.borrowed_by_user_id IS NULL ORDER BY b.author DESC, b.id DESC"),
+            new FilterCase("borrowed by user 1, by status", new CatalogIndex.Filter(null, false, 1), new CatalogSort(CatalogColumn.STATUS, true),
+                    "SELECT b.id FROM books b LEFT JOIN users u ON u.id = b.borrowed_by_user_id WHERE b.borrowed_by_user_id = 1 ORDER BY "
+                            + DatabaseManager.STATUS_SQL + ", b.id"),
+    };
+
+    private static void runFilterComparison(String url, int books) throws SQLException, IOException {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        System.out.printf("Filtering and sorting %,d books in memory (median of %d, common pool parallelism %d)%n", books, FILTER_RUNS, parallelism);
+        Path snapshotFile = Files.createTempFile("library-snapshot-", ".snapshot");
+        ForkJoinPool singleThread = new ForkJoinPool(1);
+        try (ConnectionPool pool = new ConnectionPool(url, 4)) {
+            new DatabaseManager(pool).writeCatalogSnapshot(snapshotFile);
+            CatalogSnapshot snapshot = CatalogSnapshot.open(snapshotFile);
+            long[] times = new long[FILTER_RUNS];
+            CatalogIndex index = null;
+            for (int i = 0; i < FILTER_RUNS; i++) {
+                long start = System.nanoTime();
+                index = CatalogIndex.build(snapshot);
+                times[i] = System.nanoTime() - start;
+            }
+            System.out.printf("  %-50s %,12.1f ms%n", "CatalogIndex.build", median(times) / 1e6);
+
+            CatalogIndex built = index;
+            // Until the collation ranks are ready, a title sort returns snapshot order instead of waiting.
+            long unranked = System.nanoTime();
+            built.query(CatalogIndex.Filter.NONE, CatalogSort.DEFAULT);
+            System.out.printf("  %-50s %,12.1f ms%n", "sort by title before ranking", (System.nanoTime() - unranked) / 1e6);
+            long ranking = System.nanoTime();
+            built.rankInBackground().join();
+            System.out.printf("  %-50s %,12.1f ms%n", "ranking titles and authors in the background", (System.nanoTime() - ranking) / 1e6);
+            try (Connection conn = DriverManager.getConnection(url)) {
+                for (FilterCase test : FILTER_CASES) {
+                    int rows = 0;
+                    for (int i = 0; i < FILTER_RUNS; i++) {
+                        long start = System.nanoTime();
+                        rows = built.query(test.filter(), test.sort()).length;
+                        times[i] = System.nanoTime() - start;
+                    }
+                    System.out.printf("  %-50s %,12.1f ms (%,d rows)%n", test.name(), median(times) / 1e6, rows);
+                    if (parallelism > 1) {
+                        for (int i = 0; i < FILTER_RUNS; i++) {
+                            long start = System.nanoTime();
+                            singleThread.submit(() -> built.query(test.filter(), test.sort())).join();
+                            times[i] = System.nanoTime() - start;
+                        }
+                        System.out.printf("  %-50s %,12.1f ms%n", "  on one thread", median(times) / 1e6);
+                    }
+                    for (int i = 0; i < 3; i++) {
+                        long start = System.nanoTime();
+                        rows = countRows(conn, test.sql());
+                        times[i] = System.nanoTime() - start;
+                    }
+                    System.out.printf("  %-50s %,12.1f ms (%,d rows)%n", "  same query in SQL", median(Arrays.copyOf(times, 3)) / 1e6, rows);
+                }
+            }
+        } finally {
+            singleThread.shutdown();
+            CatalogSnapshot.delete(snapshotFile);
+        }
+    }
+
+    private static void runMaintenanceComparison(String url, int books) throws SQLException, IOException {
+        System.out.printf("Maintenance of %,d books with the newest 30%% deleted, while looking up books%n", books);
+        int kept = books * 7 / 10;
+        try (Connection conn = DriverManager.getConnection(url)) {
+            conn.createStatement().executeUpdate("DELETE FROM books WHERE id > " + kept);
+        }
+        try (ConnectionPool pool = new ConnectionPool(url, 4)) {
+            long start = System.nanoTime();
+            LatencyHistogram latency = timeLookups(new DatabaseManager(pool), kept, MEASURE_MS * 1_000_000, () -> false);
+            printLookupRate("lookups alone", latency.snapshot(), System.nanoTime() - start);
+        }
+        for (boolean throttled : new boolean[]{true, false}) {
+            // A database of its own for each round, so both have the same pages to vacuum.
+            File dbFile = createDatabase(books, Math.max(1, books / 100));
+            Path backups = Files.createTempDirectory("library-backups-");
+            String roundUrl = "jdbc:sqlite:" + dbFile.getAbsolutePath();
+            try {
+                try (Connection conn = DriverManager.getConnection(roundUrl)) {
+                    conn.createStatement().executeUpdate("DELETE FROM books WHERE id > " + kept);
+                }
+                // The idle window is never reached, so only runNow starts tasks.
+                MaintenanceScheduler.Config config = new MaintenanceScheduler.Config(EnumSet.allOf(MaintenanceScheduler.Task.class), backups, 1, Duration.ofDays(1), Duration.ofDays(1),
+                        Duration.ofDays(1), Duration.ofDays(1), throttled);
+                try (ConnectionPool pool = new ConnectionPool(roundUrl, 4)) {
+                    MaintenanceScheduler maintenance = pool.startMaintenance(config);
+                    List<MaintenanceScheduler.Run> runs = new ArrayList<>();
+                    CompletableFuture<Void> done = CompletableFuture.runAsync(() -> {
+                        for (MaintenanceScheduler.Task task : MaintenanceScheduler.Task.values()) {
+                            // Null when the task had nothing to do, such as vacuum with few free pages.
+                            MaintenanceScheduler.Run run = maintenance.runNow(task).join();
+                            if (run != null) runs.add(run);
+                        }
+                    });
+                    long start = System.nanoTime();
+                    LatencyHistogram latency = timeLookups(new DatabaseManager(pool), kept, Long.MAX_VALUE, done::isDone);
+                    done.join();
+                    printLookupRate(throttled ? "lookups during throttled maintenance" : "lookups during unthrottled maintenance",
+                            latency.snapshot(), System.nanoTime() - start);
+                    for (MaintenanceScheduler.Run run : runs) {
+                        System.out.printf("    %-48s %,10d ms %,14d bytes reclaimed%n", run.task().name().toLowerCase(), run.duration().toMillis(), run.bytesReclaimed());
+                    }
+                }
+            } finally {
+                Files.deleteIfExists(dbFile.toPath());
+                try (Stream<Path> files = Files.list(backups)) {
+                    for (Path file : files.toList()) Files.delete(file);
+                }
+                Files.delete(backups);
+            }
+        }
+    }
+
+    private static Book lookUp(CatalogCache cache, int bookId) {
+        try {
+            return cache.getBookById(bookId);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void printLookupRate(String name, LatencyHistogram.Snapshot latency, long elapsedNanos) {
+        printLookups(name, latency);
+        System.out.printf("  %-50s %,12.0f lookups/sec%n", "", latency.count() * 1e9 / elapsedNanos);
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static final String[] PLANNED_QUERIES = {
+            "SELECT id FROM books WHERE borrowed_by_user_id = 1",
+            "SELECT b.id, b.title FROM books b LEFT JOIN users u ON u.id = b.borrowed_by_user_id ORDER BY b.title, b.id LIMIT 200",
+            "SELECT * FROM books WHERE id = 1"
+    };
+
+    private static void runQueryPlans() throws SQLException, IOException {
+        File dbFile = File.createTempFile("library-plans-", ".db");
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath())) {
+            SchemaMigrator migrator = new SchemaMigrator();
+            // Migration 3 added the borrower index.
+            for (int version : new int[]{2, 3}) {
+                migrator.migrate(conn, version);
+                System.out.println("Schema version " + SchemaMigrator.currentVersion(conn));
+                for (String query : PLANNED_QUERIES) {
+                    System.out.println("  " + query);
+                    try (Statement stmt = conn.createStatement();
+                         ResultSet rs = stmt.executeQuery("EXPLAIN QUERY PLAN " + query)) {
+                        while (rs.next()) {
+                            System.out.println("    -> " + rs.getString("detail"));
+                        }
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(dbFile.toPath());
+        }
+    }
+
+    static File createDatabase(int books, int users) throws SQLException {
+        File dbFile;
+        try {
+            dbFile = File.createTempFile("library-bench-", ".db");
+        } catch (IOException e) {
+            throw new SQLException("Cannot create benchmark database", e);
+        }
+        String url = "jdbc:sqlite:" + dbFile.getAbsolutePath();
+        try (ConnectionPool pool = new ConnectionPool(url, 1)) {
+            new DatabaseManager(pool).initializeDatabase();
+        }
+        // Hashing once per user would take minutes for large user counts, so they all share one salt.
+        String passwordHash = PasswordHasher.shared().hash(PASSWORD);
+        try (Connection conn = DriverManager.getConnection(url)) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO users(name, email, password) VALUES(?, ?, ?)")) {
+                for (int i = 1; i <= users; i++) {
+                    pstmt.setString(1, "User " + i);
+                    pstmt.setString(2, "user" + i + "@example.org");
+                    pstmt.setString(3, passwordHash);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO books(title, author, image_path, borrowed_by_user_id) VALUES(?, ?, ?, ?)")) {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 1; i <= books; i++) {
+                    pstmt.setString(1, word(random) + " " + word(random) + " " + word(random));
+                    pstmt.setString(2, capitalize(word(random)) + " " + capitalize(word(random)) + " " + random.nextInt(Math.max(1, books / 1000)));
+                    pstmt.setString(3, "");
+                    pstmt.setObject(4, random.nextInt(4) == 0 ? 1 + random.nextInt(users) : null);
+                    pstmt.addBatch();
+                    if (i % 10_000 == 0) pstmt.executeBatch();
+                }
+                pstmt.executeBatch();
+            }
+            conn.commit();
+        }
+        return dbFile;
+    }
+
+    // A fixed pseudo-vocabulary so titles and authors tokenize like real text.
+    private static final String[] WORDS = buildWords(2_000);
+
+    private static String[] buildWords(int count) {
+        String[] syllables = {"ka", "lo", "mi", "ter", "an", "sol", "ri", "ven", "do", "mar", "el", "us", "bra", "nit", "o", "pe"};
+        Random random = new Random(42);
+        String[] words = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder word = new StringBuilder();
+            int parts = 2 + random.nextInt(3);
+            for (int p = 0; p < parts; p++) word.append(syllables[random.nextInt(syllables.length)]);
+            words[i] = word.toString();
+        }
+        return words;
+    }
+
+    static String word(ThreadLocalRandom random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    static void report(String name, IntConsumer op, int books) {
+        run(op, books, WARMUP_MS);
+        long ops = run(op, books, MEASURE_MS);
+        System.out.printf("  %-50s %,12.0f ops/sec%n", name, ops * 1000.0 / MEASURE_MS);
+    }
+
+    private static long run(IntConsumer op, int books, long durationMs) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long deadline = System.nanoTime() + durationMs * 1_000_000;
+        long ops = 0;
+        while (System.nanoTime() < deadline) {
+            op.accept(1 + random.nextInt(books));
+            ops++;
+        }
+        return ops;
+    }
+
+    // The pre-pool access pattern: a fresh connection and statement for every call.
+    private static void legacyGetBookById(String url, int bookId) {
+        try (Connection conn = DriverManager.getConnection(url);
+             PreparedStatement pstmt = conn.prepareStatement("SELECT * FROM books WHERE id = ?")) {
+            pstmt.setInt(1, bookId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    new Book(rs.getInt("id"), rs.getString("title"), rs.getString("author"), rs.getString("image_path"), rs.getInt("borrowed_by_user_id"));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void legacyUpdateBorrowStatus(String url, int bookId, int userId) {
+        try (Connection conn = DriverManager.getConnection(url);
+             PreparedStatement pstmt = conn.prepareStatement("UPDATE books SET borrowed_by_user_id = NULLIF(?, 0) WHERE id = ?")) {
+            pstmt.setInt(1, userId);
+            pstmt.setInt(2, bookId);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
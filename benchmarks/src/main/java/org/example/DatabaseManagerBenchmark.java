@@ -0,0 +1,58 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/** Point operations and the full catalog read of {@link DatabaseManager}. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseManagerBenchmark {
+    private boolean borrow = true;
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Book> getAllBooks(SyntheticLibrary library) {
+        return library.db.getAllBooks();
+    }
+
+    @Benchmark
+    public Book getBookById(SyntheticLibrary library) {
+        return library.db.getBookById(1 + ThreadLocalRandom.current().nextInt(library.books));
+    }
+
+    @Benchmark
+    public String getBorrowerName(SyntheticLibrary library) {
+        return library.db.getBorrowerName(1 + ThreadLocalRandom.current().nextInt(library.users));
+    }
+
+    /** Alternates borrowing and returning random books, so the share of borrowed books stays put. */
+    @Benchmark
+    public void updateBookBorrowStatus(SyntheticLibrary library) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        library.db.updateBookBorrowStatus(1 + random.nextInt(library.books), borrow ? 1 + random.nextInt(library.users) : 0);
+        borrow = !borrow;
+    }
+
+    /** Dominated by the password hash; see {@code DatabaseBenchmark login} for throughput under load. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public User loginUser(SyntheticLibrary library) {
+        int user = 1 + ThreadLocalRandom.current().nextInt(library.users);
+        return library.db.loginUser("user" + user + "@example.org", DatabaseBenchmark.PASSWORD);
+    }
+}
@@ -0,0 +1,140 @@
+package org.example;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test for {@link LibraryServer}: starts it on a free port over a synthetic database and
+ * has a growing number of concurrent clients send a mix of catalog pages, searches, book
+ * lookups and borrows or returns. Prints requests/sec and p50/p99 latency per concurrency level.
+ * Usage: {@code LibraryServerLoadTest [books] [concurrency...]}.
+ */
+public class LibraryServerLoadTest {
+    private static final long WARMUP_MS = 1_000;
+    private static final long MEASURE_MS = 3_000;
+
+    public static void main(String[] args) throws Exception {
+        int books = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int[] levels = args.length > 1
+                ? Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray()
+                : new int[]{1, 8, 32, 128, 512};
+        int users = Math.max(1, books / 100);
+        File dbFile = DatabaseBenchmark.createDatabase(books, users);
+        try (ConnectionPool pool = new ConnectionPool("jdbc:sqlite:" + dbFile.getAbsolutePath(), 4);
+             LibraryServer server = new LibraryServer(new DatabaseManager(pool), 0);
+             ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(clients).build()) {
+            server.start();
+            String base = server.baseUri().toString();
+            System.out.printf("Mixed API load over %,d books (40%% pages, 25%% searches, 25%% lookups, 10%% borrows or returns)%n", books);
+            System.out.printf("  %-12s %12s %10s %10s %8s%n", "clients", "req/sec", "p50 ms", "p99 ms", "errors");
+            for (int clientCount : levels) {
+                run(http, base, books, users, clientCount, WARMUP_MS);
+                Result result = run(http, base, books, users, clientCount, MEASURE_MS);
+                System.out.printf("  %-12d %,12.0f %10.2f %10.2f %,8d%n", clientCount, result.requests * 1000.0 / MEASURE_MS,
+                        result.percentile(0.50) / 1e6, result.percentile(0.99) / 1e6, result.errors);
+            }
+        } finally {
+            Files.deleteIfExists(dbFile.toPath());
+        }
+    }
+
+    private static Result run(HttpClient http, String base, int books, int users, int clientCount, long durationMs) throws InterruptedException {
+        long deadline = System.nanoTime() + durationMs * 1_000_000;
+        List<long[]> latencies = new ArrayList<>();
+        int[] counts = new int[clientCount];
+        LongAdder errors = new LongAdder();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clientCount; c++) {
+                long[] samples = new long[1 << 16];
+                latencies.add(samples);
+                int client = c;
+                clients.execute(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    int user = 1 + client % users;
+                    String token;
+                    try {
+                        token = login(http, base, user);
+                    } catch (Exception e) {
+                        errors.increment();
+                        return;
+                    }
+                    int n = 0;
+                    int held = 0;
+                    while (System.nanoTime() < deadline) {
+                        int pick = random.nextInt(100);
+                        int bookId = 1 + random.nextInt(books);
+                        long start = System.nanoTime();
+                        try {
+                            if (pick < 40) {
+                                get(http, base + "books?sort=title&offset=" + random.nextInt(Math.max(1, books - 50)) + "&limit=50", errors);
+                            } else if (pick < 65) {
+                                get(http, base + "books/search?q=" + DatabaseBenchmark.word(random) + "&limit=50", errors);
+                            } else if (pick < 90) {
+                                get(http, base + "books/" + bookId, errors);
+                            } else if (held == 0) {
+                                // 409 is a normal answer here: another client may hold the book.
+                                if (post(http, base + "books/" + bookId + "/borrow", token, errors) == 200) held = bookId;
+                            } else {
+                                post(http, base + "books/" + held + "/return", token, errors);
+                                held = 0;
+                            }
+                        } catch (Exception e) {
+                            errors.increment();
+                        }
+                        if (n < samples.length) samples[n++] = System.nanoTime() - start;
+                    }
+                    counts[client] = n;
+                });
+            }
+        }
+        long total = 0;
+        for (int count : counts) total += count;
+        long[] all = new long[(int) total];
+        int at = 0;
+        for (int c = 0; c < clientCount; c++) {
+            System.arraycopy(latencies.get(c), 0, all, at, counts[c]);
+            at += counts[c];
+        }
+        Arrays.sort(all);
+        return new Result(total, all, errors.sum());
+    }
+
+    private static String login(HttpClient http, String base, int user) throws Exception {
+        String body = "{\"email\":\"user" + user + "@example.org\",\"password\":\"" + DatabaseBenchmark.PASSWORD + "\"}";
+        HttpResponse<String> response = http.send(HttpRequest.newBuilder(URI.create(base + "login"))
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) throw new IllegalStateException("Login failed: " + response.body());
+        return Json.parseObject(response.body()).get("token");
+    }
+
+    private static void get(HttpClient http, String url, LongAdder errors) throws Exception {
+        int status = http.send(HttpRequest.newBuilder(URI.create(url)).build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (status != 200) errors.increment();
+    }
+
+    private static int post(HttpClient http, String url, String token, LongAdder errors) throws Exception {
+        int status = http.send(HttpRequest.newBuilder(URI.create(url)).header("Authorization", "Bearer " + token)
+                .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (status != 200 && status != 409) errors.increment();
+        return status;
+    }
+
+    private record Result(long requests, long[] sortedLatencies, long errors) {
+        double percentile(double p) {
+            if (sortedLatencies.length == 0) return 0;
+            return sortedLatencies[Math.min(sortedLatencies.length - 1, (int) (p * sortedLatencies.length))];
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.SQLException;
+
+/**
+ * A synthetic database built by {@link DatabaseBenchmark#createDatabase} for each trial, with
+ * one user per hundred books and a quarter of the books on loan. Override the size with
+ * {@code -p books=...}.
+ */
+@State(Scope.Benchmark)
+public class SyntheticLibrary {
+    @Param({"10000", "100000"})
+    public int books;
+
+    int users;
+    File dbFile;
+    ConnectionPool pool;
+    DatabaseManager db;
+
+    @Setup(Level.Trial)
+    public void create() throws SQLException {
+        users = Math.max(1, books / 100);
+        dbFile = DatabaseBenchmark.createDatabase(books, users);
+        pool = new ConnectionPool("jdbc:sqlite:" + dbFile.getAbsolutePath(), 4);
+        db = new DatabaseManager(pool);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        pool.close();
+        Files.deleteIfExists(dbFile.toPath());
+    }
+}
@@ -0,0 +1,222 @@
+package org.example;
+
+import javax.swing.SwingUtilities;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking facade over {@link DatabaseManager} for the Swing frames.
+ * Every call runs on a virtual thread and completes a {@link CompletableFuture};
+ * UI code continues on {@link #EDT} so the event dispatch thread only applies results.
+ * Concurrent reads of the same key share a single query, and a read is skipped entirely
+ * if every caller has cancelled it before it starts.
+ */
+class AsyncDatabaseManager implements AutoCloseable {
+    /** Runs continuations on the Swing event dispatch thread. */
+    static final Executor EDT = SwingUtilities::invokeLater;
+
+    private final DatabaseManager db;
+    private final CatalogCache cache;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ConcurrentHashMap<Object, InFlight<?>> inFlight = new ConcurrentHashMap<>();
+
+    AsyncDatabaseManager(DatabaseManager db) {
+        this.db = db;
+        this.cache = new CatalogCache(db);
+    }
+
+    DatabaseManager getDatabaseManager() { return db; }
+
+    /** Creates or upgrades the schema, which can take seconds for an old database; see {@link SchemaMigrator}. */
+    public CompletableFuture<Void> initializeDatabase() {
+        return submit(() -> {
+            db.initializeDatabase();
+            return null;
+        });
+    }
+
+    public CompletableFuture<User> registerUser(String name, String email, String password) {
+        return submit(() -> db.registerUser(name, email, password));
+    }
+
+    /** Only the lookup runs here; the password check runs on the {@link PasswordHasher} pool. */
+    public CompletableFuture<User> loginUser(String email, String password) {
+        return submit(() -> db.loginUserAsync(email, password)).thenCompose(check -> check);
+    }
+
+    public CompletableFuture<Integer> countBooks() {
+        return submit(db::countBooks);
+    }
+
+    public CompletableFuture<List<CatalogRow>> getCatalogPage(CatalogSort sort, CatalogRow after, int limit) {
+        return submit(() -> db.getCatalogPage(sort, after, limit));
+    }
+
+    public CompletableFuture<List<CatalogRow>> getCatalogPageAt(CatalogSort sort, int offset, int limit) {
+        return submit(() -> db.getCatalogPageAt(sort, offset, limit));
+    }
+
+    public CompletableFuture<Integer> countBefore(CatalogSort sort, CatalogRow row) {
+        return submit(() -> db.countBefore(sort, row));
+    }
+
+    public CompletableFuture<List<CatalogRow>> searchBooks(String query, int limit, int offset) {
+        return submit(() -> db.searchBooks(query, limit, offset));
+    }
+
+    public CompletableFuture<Integer> countSearchResults(String query) {
+        return submit(() -> db.countSearchResults(query));
+    }
+
+    /**
+     * Looks up a book. A cached book is returned already completed, without a thread hop;
+     * callers asking for the same id while a lookup is pending share its result.
+     */
+    public CompletableFuture<Book> getBookById(int bookId) {
+        Book cached = cache.getIfPresent(bookId);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+        return coalesced(new BookKey(bookId), () -> {
+            try {
+                return cache.getBookById(bookId);
+            } catch (SQLException e) {
+                db.handleError(e);
+                return null;
+            }
+        });
+    }
+
+    public CompletableFuture<List<LoanEvent>> getLoanHistory(int userId, int limit) {
+        return submit(() -> db.getLoanHistory(userId, limit));
+    }
+
+    public CompletableFuture<Integer> getActiveLoanCount(int userId) {
+        return submit(() -> db.getActiveLoanCount(userId));
+    }
+
+    public CompletableFuture<List<BookLoanCount>> getMostBorrowed(int limit) {
+        return submit(() -> db.getMostBorrowed(limit));
+    }
+
+    public CompletableFuture<List<DailyLoanVolume>> getDailyLoanVolume(int days) {
+        return submit(() -> db.getDailyLoanVolume(days));
+    }
+
+    public CompletableFuture<Void> addBook(String title, String author, String imagePath) {
+        return submit(() -> {
+            db.addBook(title, author, imagePath);
+            return null;
+        });
+    }
+
+    public CompletableFuture<LoanOutcome> tryBorrow(int bookId, int userId) {
+        return submit(() -> db.tryBorrow(bookId, userId));
+    }
+
+    public CompletableFuture<LoanOutcome> tryReturn(int bookId, int userId) {
+        return submit(() -> db.tryReturn(bookId, userId));
+    }
+
+    public CompletableFuture<Void> deleteBook(int id) {
+        return submit(() -> {
+            db.deleteBook(id);
+            return null;
+        });
+    }
+
+    /** Imports a catalog file, resuming an earlier run of the same file. Fails with the I/O or SQL error that stopped it. */
+    public CompletableFuture<CatalogImporter.Progress> importBooks(Path file, CatalogImporter.Listener listener) {
+        return submit(() -> {
+            try {
+                return db.importBooks(file, CatalogImporter.DEFAULT_BATCH_SIZE, false, listener);
+            } catch (IOException | SQLException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    public CompletableFuture<Long> getCatalogVersion() {
+        return submit(db::getCatalogVersion);
+    }
+
+    /** Writes a {@link CatalogSnapshot} of the whole catalog; completes with the catalog version it holds. */
+    public CompletableFuture<Long> writeCatalogSnapshot(Path file) {
+        return submit(() -> {
+            try {
+                return db.writeCatalogSnapshot(file);
+            } catch (IOException | SQLException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, executor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> coalesced(Object key, Supplier<T> query) {
+        boolean[] created = new boolean[1];
+        InFlight<T> flight = (InFlight<T>) inFlight.compute(key, (k, existing) -> {
+            if (existing != null && !existing.source.isDone()) {
+                existing.waiters++;
+                return existing;
+            }
+            created[0] = true;
+            return new InFlight<T>();
+        });
+
+        if (created[0]) {
+            executor.execute(() -> {
+                try {
+                    if (!flight.source.isDone()) {
+                        flight.source.complete(query.get());
+                    }
+                } catch (Throwable t) {
+                    flight.source.completeExceptionally(t);
+                } finally {
+                    inFlight.remove(key, flight);
+                }
+            });
+        }
+
+        // Each caller gets its own view so that cancelling it only withdraws that caller.
+        CompletableFuture<T> result = flight.source.copy();
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                release(key, flight);
+            }
+        });
+        return result;
+    }
+
+    private void release(Object key, InFlight<?> flight) {
+        inFlight.computeIfPresent(key, (k, current) -> {
+            if (current == flight && --current.waiters == 0) {
+                current.source.cancel(false);
+                return null;
+            }
+            return current;
+        });
+    }
+
+    @Override
+    public void close() {
+        executor.close();
+    }
+
+    private record BookKey(int id) {}
+
+    private static final class InFlight<T> {
+        final CompletableFuture<T> source = new CompletableFuture<>();
+        int waiters = 1; // guarded by the map entry lock in compute/computeIfPresent
+    }
+}
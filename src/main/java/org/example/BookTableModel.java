@@ -0,0 +1,507 @@
+package org.example;
+
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Table model for the dashboard catalog that only holds the pages the table has asked for.
+ * Pages are fetched lazily in the background with keyset pagination and kept in a bounded
+ * LRU, so memory stays flat no matter how many books there are. Sorting is done by the
+ * database; {@link SqlRowSorter} forwards header clicks here instead of sorting in memory.
+ * Committed changes arrive as {@link CatalogEvent}s and are applied as single-row inserts,
+ * updates and deletes, so the selection and scroll position survive every mutation.
+ * While a search is active the model shows full-text matches in relevance order instead.
+ * At startup the default view can be served from a {@link CatalogSnapshot} until the database
+ * has confirmed it is current. With a {@link CatalogIndex.Filter} set, rows come from a
+ * {@link CatalogIndex} instead, filtered and sorted in memory off the event dispatch thread;
+ * a search still takes precedence over filters. All methods must be called on the event
+ * dispatch thread.
+ */
+class BookTableModel extends AbstractTableModel {
+    static final int BOOK_ID_OFFSET = 10000;
+    static final int PAGE_SIZE = 200;
+    private static final int MAX_CACHED_PAGES = 50;
+    private static final String[] COLUMN_NAMES = {"S.No.", "Book ID", "Title", "Author", "Status (Borrowed By)"};
+    private static final CatalogColumn[] SORT_COLUMNS = {null, CatalogColumn.ID, CatalogColumn.TITLE, CatalogColumn.AUTHOR, CatalogColumn.STATUS};
+
+    private final AsyncDatabaseManager db;
+    private final Map<Integer, List<CatalogRow>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<CatalogRow>> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+    // Last row of each page seen so far; the next page is read from the index right after it.
+    private final Map<Integer, CatalogRow> pageEnds = new HashMap<>();
+    // Pages being fetched, each with a token; a result is only kept if its token is still current.
+    private final Map<Integer, Integer> loading = new HashMap<>();
+    private int nextLoadToken;
+    private CatalogSort sort = CatalogSort.DEFAULT;
+    private String search;
+    // Source of default-order pages while it matches the catalog; dropped at the first change.
+    private CatalogSnapshot snapshot;
+    private CatalogIndex.Filter filter = CatalogIndex.Filter.NONE;
+    // Built the first time a filter is set and kept up to date while only borrowers change.
+    private CompletableFuture<CatalogIndex> index;
+    // The filtered rows on screen, as rows of shownIndex in display order; null when not filtering.
+    private CatalogIndex shownIndex;
+    private int[] shownRows;
+    // Bumped for every query of the index; only the latest result is shown.
+    private int queryToken;
+    private int rowCount;
+    // Bumped whenever the rows are replaced wholesale; pending incremental updates are then dropped.
+    private int viewGeneration;
+    // Reloads and catalog events are applied strictly one after another, in arrival order.
+    private CompletableFuture<Void> updates = CompletableFuture.completedFuture(null);
+
+    BookTableModel(AsyncDatabaseManager db) {
+        this.db = db;
+        db.getDatabaseManager().addCatalogListener(event -> SwingUtilities.invokeLater(() -> enqueue(() -> apply(event))));
+    }
+
+    /** Re-reads the row count and drops every loaded page. */
+    CompletableFuture<Void> reload() {
+        return enqueue(this::reloadNow);
+    }
+
+    /**
+     * Shows the rows of {@code snapshot} straight away, then compares its version with the
+     * database in the background. A stale snapshot is dropped and the model reloads as usual.
+     * Meant for startup, before a search or sort has been chosen. Completes with whether the
+     * snapshot was current.
+     */
+    CompletableFuture<Boolean> reload(CatalogSnapshot snapshot) {
+        viewGeneration++;
+        discardPages();
+        this.snapshot = snapshot;
+        rowCount = snapshot.size();
+        fireTableDataChanged();
+        CompletableFuture<Boolean> current = new CompletableFuture<>();
+        enqueue(() -> db.getCatalogVersion().thenComposeAsync(version -> {
+            boolean matches = version == snapshot.version();
+            current.complete(matches);
+            if (matches) return CompletableFuture.completedFuture(null);
+            this.snapshot = null;
+            return reloadNow();
+        }, AsyncDatabaseManager.EDT));
+        return current;
+    }
+
+    private CompletableFuture<Void> reloadNow() {
+        if (filtering()) {
+            index = null;
+            query();
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Integer> count = search == null ? db.countBooks() : db.countSearchResults(search);
+        return count.thenAcceptAsync(rows -> {
+            viewGeneration++;
+            discardPages();
+            rowCount = rows;
+            fireTableDataChanged();
+        }, AsyncDatabaseManager.EDT);
+    }
+
+    /** Shows full-text matches for {@code query}, or the whole catalog again when it is blank. */
+    void setSearch(String query) {
+        String normalized = query == null || query.isBlank() ? null : query.trim();
+        if (Objects.equals(normalized, search)) return;
+        search = normalized;
+        if (filtering()) {
+            query();
+            return;
+        }
+        dropFilteredRows();
+        viewGeneration++;
+        reload();
+    }
+
+    CatalogIndex.Filter getFilter() { return filter; }
+
+    /**
+     * Shows only the books {@code filter} keeps, or the whole catalog again when it is empty.
+     * The first filter builds the {@link CatalogIndex}; until the rows arrive the table keeps
+     * what it showed. A title or author sort asked for before the index has ranked that column
+     * shows the filtered rows in snapshot order, then sorts them when the ranks arrive.
+     */
+    void setFilter(CatalogIndex.Filter filter) {
+        if (filter.equals(this.filter)) return;
+        boolean wasFiltering = filtering();
+        this.filter = filter;
+        if (filtering()) {
+            query();
+        } else if (wasFiltering) {
+            dropFilteredRows();
+            viewGeneration++;
+            reload();
+        }
+    }
+
+    private boolean filtering() {
+        return search == null && !filter.isEmpty();
+    }
+
+    private void query() {
+        int token = ++queryToken;
+        CatalogIndex.Filter filter = this.filter;
+        CatalogSort sort = this.sort;
+        index().thenApplyAsync(index -> {
+                    boolean sorted = index.canSortBy(sort.column());
+                    return new FilteredRows(index, index.query(filter, sort), sorted);
+                }, ForkJoinPool.commonPool())
+                .whenCompleteAsync((result, error) -> {
+                    if (token != queryToken) return;
+                    if (error != null) {
+                        error.printStackTrace();
+                        return;
+                    }
+                    viewGeneration++;
+                    shownIndex = result.index();
+                    shownRows = result.rows();
+                    rowCount = shownRows.length;
+                    fireTableDataChanged();
+                    if (!result.sorted()) {
+                        result.index().rankInBackground().whenCompleteAsync((ranked, rankError) -> {
+                            if (rankError != null) {
+                                rankError.printStackTrace();
+                            } else if (token == queryToken) {
+                                query();
+                            }
+                        }, AsyncDatabaseManager.EDT);
+                    }
+                }, AsyncDatabaseManager.EDT);
+    }
+
+    /**
+     * The index, built on first use from the startup snapshot if it is still current or else from
+     * a new one. Titles and authors start ranking in the background as soon as it is built, so
+     * nothing is indexed or ranked until a filter asks for it.
+     */
+    private CompletableFuture<CatalogIndex> index() {
+        if (index == null) {
+            CatalogSnapshot startup = snapshot;
+            Path file = db.getDatabaseManager().getCatalogSnapshotPath();
+            CompletableFuture<CatalogIndex> building = db.getCatalogVersion().thenCompose(version -> {
+                if (startup != null && startup.version() == version) return CompletableFuture.completedFuture(startup);
+                return db.writeCatalogSnapshot(file).thenApply(size -> {
+                    CatalogSnapshot written = CatalogSnapshot.open(file);
+                    if (written == null) throw new IllegalStateException("Could not read back " + file);
+                    return written;
+                });
+            }).thenApplyAsync(CatalogIndex::build, ForkJoinPool.commonPool());
+            building.thenAccept(CatalogIndex::rankInBackground);
+            index = building;
+            // Let the next query try again rather than keep failing.
+            building.whenCompleteAsync((built, error) -> {
+                if (error != null && index == building) index = null;
+            }, AsyncDatabaseManager.EDT);
+        }
+        return index;
+    }
+
+    private void dropFilteredRows() {
+        queryToken++;
+        shownIndex = null;
+        shownRows = null;
+    }
+
+    // Keeps the index in step with a committed change, or drops it to be rebuilt when next needed.
+    private void updateIndex(CatalogEvent event) {
+        if (index == null) return;
+        if (event instanceof CatalogEvent.BorrowStatusChanged changed && index.isDone() && !index.isCompletedExceptionally()
+                && index.join().updateBorrower(changed.after())) {
+            return;
+        }
+        index = null;
+    }
+
+    CatalogSort getSort() { return sort; }
+
+    void setSort(CatalogSort sort) {
+        if (sort.equals(this.sort)) return;
+        this.sort = sort;
+        if (filtering()) {
+            query();
+            return;
+        }
+        viewGeneration++;
+        discardPages();
+        fireTableDataChanged();
+    }
+
+    private CompletableFuture<Void> enqueue(Supplier<CompletableFuture<Void>> step) {
+        updates = updates.thenComposeAsync(ignored -> step.get(), AsyncDatabaseManager.EDT)
+                .exceptionally(e -> {
+                    e.printStackTrace();
+                    return null;
+                });
+        return updates;
+    }
+
+    private CompletableFuture<Void> apply(CatalogEvent event) {
+        // Pages already taken from the snapshot are still right and get patched like any others.
+        snapshot = null;
+        updateIndex(event);
+        if (filtering()) {
+            // The index was patched or dropped above; filtered positions are simply queried again.
+            query();
+            return CompletableFuture.completedFuture(null);
+        }
+        if (search != null) {
+            // Match positions depend on rank, so only in-place status changes can be patched.
+            return event instanceof CatalogEvent.BorrowStatusChanged changed ? replaceRow(changed.after()) : reloadNow();
+        }
+        return switch (event) {
+            case CatalogEvent.BookAdded added -> insertRow(added.book());
+            case CatalogEvent.BookDeleted deleted -> removeRow(deleted.book());
+            case CatalogEvent.BorrowStatusChanged changed -> sort.column() == CatalogColumn.STATUS
+                    ? removeRow(changed.before()).thenCompose(ignored -> insertRow(changed.after()))
+                    : replaceRow(changed.after());
+            case CatalogEvent.BooksImported imported -> reloadNow();
+        };
+    }
+
+    private CompletableFuture<Void> insertRow(CatalogRow book) {
+        int expectedView = viewGeneration;
+        return db.countBefore(sort, book).thenAcceptAsync(position -> {
+            if (expectedView != viewGeneration || position > rowCount) return;
+            int page = position / PAGE_SIZE;
+            List<CatalogRow> rows = pages.get(page);
+            if (rows != null && position % PAGE_SIZE <= rows.size()) {
+                List<CatalogRow> updated = new ArrayList<>(rows);
+                updated.add(position % PAGE_SIZE, book);
+                if (updated.size() > PAGE_SIZE) {
+                    updated.remove(PAGE_SIZE);
+                }
+                pages.put(page, updated);
+                pageEnds.put(page, updated.get(updated.size() - 1));
+            } else {
+                pages.remove(page);
+                pageEnds.remove(page);
+            }
+            invalidatePagesAfter(page);
+            rowCount++;
+            fireTableRowsInserted(position, position);
+        }, AsyncDatabaseManager.EDT);
+    }
+
+    private CompletableFuture<Void> removeRow(CatalogRow book) {
+        int expectedView = viewGeneration;
+        int loadedAt = findLoadedRow(book.id());
+        CompletableFuture<Integer> located = loadedAt >= 0
+                ? CompletableFuture.completedFuture(loadedAt)
+                : db.countBefore(sort, book);
+        return located.thenAcceptAsync(position -> {
+            if (expectedView != viewGeneration || position >= rowCount) return;
+            int page = position / PAGE_SIZE;
+            List<CatalogRow> rows = pages.get(page);
+            int index = position % PAGE_SIZE;
+            if (rows != null && index < rows.size() && rows.get(index).id() == book.id()) {
+                // The page is now one row short; its last slot is refetched when it is next painted.
+                List<CatalogRow> updated = new ArrayList<>(rows);
+                updated.remove(index);
+                pages.put(page, updated);
+            } else {
+                pages.remove(page);
+            }
+            pageEnds.remove(page);
+            loading.remove(page);
+            invalidatePagesAfter(page);
+            rowCount--;
+            fireTableRowsDeleted(position, position);
+        }, AsyncDatabaseManager.EDT);
+    }
+
+    private CompletableFuture<Void> replaceRow(CatalogRow book) {
+        int position = findLoadedRow(book.id());
+        if (position >= 0) {
+            List<CatalogRow> updated = new ArrayList<>(pages.get(position / PAGE_SIZE));
+            updated.set(position % PAGE_SIZE, book);
+            pages.put(position / PAGE_SIZE, updated);
+            fireTableRowsUpdated(position, position);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private int findLoadedRow(int bookId) {
+        for (Map.Entry<Integer, List<CatalogRow>> entry : pages.entrySet()) {
+            List<CatalogRow> rows = entry.getValue();
+            for (int i = 0; i < rows.size(); i++) {
+                if (rows.get(i).id() == bookId) {
+                    return entry.getKey() * PAGE_SIZE + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    // Rows after a structural change have shifted by one, so later pages no longer line up.
+    private void invalidatePagesAfter(int page) {
+        pages.keySet().removeIf(p -> p > page);
+        pageEnds.keySet().removeIf(p -> p > page);
+        loading.keySet().removeIf(p -> p >= page);
+    }
+
+    /** Returns the book id shown in a model row, or -1 if that row has not been loaded. */
+    int getBookIdAt(int row) {
+        CatalogRow book = getLoadedRow(row);
+        return book == null ? -1 : book.id();
+    }
+
+    CatalogRow getLoadedRow(int row) {
+        if (shownRows != null) return row < shownRows.length ? shownIndex.row(shownRows[row]) : null;
+        List<CatalogRow> page = pages.get(row / PAGE_SIZE);
+        int index = row % PAGE_SIZE;
+        return page != null && index < page.size() ? page.get(index) : null;
+    }
+
+    @Override public int getRowCount() { return rowCount; }
+    @Override public int getColumnCount() { return COLUMN_NAMES.length; }
+    @Override public String getColumnName(int column) { return COLUMN_NAMES[column]; }
+    @Override public boolean isCellEditable(int row, int column) { return false; }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column <= 1 ? Integer.class : String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (column == 0) return row + 1;
+        CatalogRow book = getLoadedRow(row);
+        if (book == null && shownRows == null) {
+            requestPage(row / PAGE_SIZE);
+            book = getLoadedRow(row);
+            if (book == null) return column == 2 ? "Loading..." : null;
+        }
+        return book == null ? null : cellValue(book, column);
+    }
+
+    /** The value shown for a loaded row in any column but the serial number. */
+    static Object cellValue(CatalogRow book, int column) {
+        return switch (column) {
+            case 1 -> book.id() + BOOK_ID_OFFSET;
+            case 2 -> book.title();
+            case 3 -> book.author();
+            default -> book.status();
+        };
+    }
+
+    private void requestPage(int page) {
+        if (loading.containsKey(page)) return;
+        if (snapshot != null && search == null && sort.equals(CatalogSort.DEFAULT)) {
+            List<CatalogRow> rows = snapshot.rows(page * PAGE_SIZE, Math.min(snapshot.size(), (page + 1) * PAGE_SIZE));
+            pages.put(page, rows);
+            if (!rows.isEmpty()) {
+                pageEnds.put(page, rows.get(rows.size() - 1));
+            }
+            return;
+        }
+        int token = ++nextLoadToken;
+        loading.put(page, token);
+        CatalogRow previousEnd = page == 0 ? null : pageEnds.get(page - 1);
+        CompletableFuture<List<CatalogRow>> load;
+        if (search != null) {
+            load = db.searchBooks(search, PAGE_SIZE, page * PAGE_SIZE);
+        } else if (page == 0 || previousEnd != null) {
+            load = db.getCatalogPage(sort, previousEnd, PAGE_SIZE);
+        } else {
+            load = db.getCatalogPageAt(sort, page * PAGE_SIZE, PAGE_SIZE);
+        }
+        load.thenAcceptAsync(rows -> {
+            if (!loading.remove(page, token)) return;
+            pages.put(page, rows);
+            if (!rows.isEmpty()) {
+                pageEnds.put(page, rows.get(rows.size() - 1));
+            }
+            int first = page * PAGE_SIZE;
+            int last = Math.min(rowCount, first + PAGE_SIZE) - 1;
+            if (first <= last) {
+                fireTableRowsUpdated(first, last);
+            }
+        }, AsyncDatabaseManager.EDT);
+    }
+
+    // sorted is false when the rows are in snapshot order because the sort column was not ranked yet.
+    private record FilteredRows(CatalogIndex index, int[] rows, boolean sorted) { }
+
+    private void discardPages() {
+        pages.clear();
+        pageEnds.clear();
+        loading.clear();
+    }
+
+    /**
+     * A row sorter that leaves row order to the model. Clicking a header asks the model to
+     * re-query in that order, while the header still shows the usual sort arrow.
+     */
+    static class SqlRowSorter extends RowSorter<BookTableModel> {
+        private final BookTableModel model;
+        private List<SortKey> sortKeys;
+
+        SqlRowSorter(BookTableModel model) {
+            this.model = model;
+            this.sortKeys = keysFor(model.getSort());
+        }
+
+        @Override public BookTableModel getModel() { return model; }
+
+        @Override
+        public void toggleSortOrder(int column) {
+            CatalogColumn sortColumn = SORT_COLUMNS[column];
+            if (sortColumn == null) return;
+            CatalogSort current = model.getSort();
+            boolean ascending = current.column() != sortColumn || !current.ascending();
+            setSortKeys(List.of(new SortKey(column, ascending ? SortOrder.ASCENDING : SortOrder.DESCENDING)));
+        }
+
+        @Override
+        public void setSortKeys(List<? extends SortKey> keys) {
+            CatalogSort sort = CatalogSort.DEFAULT;
+            if (keys != null && !keys.isEmpty()) {
+                SortKey key = keys.get(0);
+                CatalogColumn column = SORT_COLUMNS[key.getColumn()];
+                if (column != null && key.getSortOrder() != SortOrder.UNSORTED) {
+                    sort = new CatalogSort(column, key.getSortOrder() == SortOrder.ASCENDING);
+                }
+            }
+            sortKeys = keysFor(sort);
+            fireSortOrderChanged();
+            model.setSort(sort);
+        }
+
+        private static List<SortKey> keysFor(CatalogSort sort) {
+            for (int i = 0; i < SORT_COLUMNS.length; i++) {
+                if (SORT_COLUMNS[i] == sort.column()) {
+                    return List.of(new SortKey(i, sort.ascending() ? SortOrder.ASCENDING : SortOrder.DESCENDING));
+                }
+            }
+            return Collections.emptyList();
+        }
+
+        @Override public List<? extends SortKey> getSortKeys() { return sortKeys; }
+        @Override public int convertRowIndexToModel(int index) { return index; }
+        @Override public int convertRowIndexToView(int index) { return index; }
+        @Override public int getViewRowCount() { return model.getRowCount(); }
+        @Override public int getModelRowCount() { return model.getRowCount(); }
+        @Override public void modelStructureChanged() { }
+        @Override public void allRowsChanged() { }
+        @Override public void rowsInserted(int firstRow, int endRow) { }
+        @Override public void rowsDeleted(int firstRow, int endRow) { }
+        @Override public void rowsUpdated(int firstRow, int endRow) { }
+        @Override public void rowsUpdated(int firstRow, int endRow, int column) { }
+    }
+}
@@ -0,0 +1,139 @@
+package org.example;
+
+import java.sql.SQLException;
+import java.time.Duration;
+
+/**
+ * Read-through cache in front of {@link DatabaseManager} for point lookups of books and
+ * borrower names, each held in a bounded {@link IntLruCache}. Books are invalidated by the
+ * catalog events of {@code addBook}, {@code deleteBook}, bulk imports and every borrow or
+ * return. Users have no such events, yet they can be renamed or deleted in the database
+ * (migration 7 even bumps the catalog version on a rename), so borrower names expire after
+ * {@code userTtl}. Changes made by other processes on the same database file are not seen
+ * until the entry is evicted or expires. A failed read is passed on to the caller as its
+ * SQLException and caches nothing. Thread-safe.
+ */
+class CatalogCache {
+    static final int DEFAULT_BOOKS = 10_000;
+    static final int DEFAULT_USERS = 1_000;
+    static final Duration DEFAULT_USER_TTL = Duration.ofMinutes(1);
+
+    private final DatabaseManager db;
+    private final IntLruCache<Book> books;
+    private final IntLruCache<UserName> userNames;
+    private final long userTtlNanos;
+    // Bumped by every invalidation. A value read from the database is only cached if no
+    // invalidation happened while it was being read, so a slow read never re-caches a stale row.
+    private long generation; // guarded by books
+
+    private long bookHits, bookMisses; // guarded by books
+    private long userHits, userMisses; // guarded by userNames
+
+    CatalogCache(DatabaseManager db) {
+        this(db, DEFAULT_BOOKS, DEFAULT_USERS);
+    }
+
+    CatalogCache(DatabaseManager db, int maxBooks, int maxUsers) {
+        this(db, maxBooks, maxUsers, DEFAULT_USER_TTL);
+    }
+
+    CatalogCache(DatabaseManager db, int maxBooks, int maxUsers, Duration userTtl) {
+        this.db = db;
+        this.books = new IntLruCache<>(maxBooks);
+        this.userNames = new IntLruCache<>(maxUsers);
+        this.userTtlNanos = userTtl.toNanos();
+        db.addCatalogListener(this::invalidate);
+    }
+
+    /** Returns the cached book without going to the database, or null. */
+    Book getIfPresent(int bookId) {
+        synchronized (books) {
+            Book book = books.get(bookId);
+            if (book != null) bookHits++;
+            return book;
+        }
+    }
+
+    Book getBookById(int bookId) throws SQLException {
+        long stamp;
+        synchronized (books) {
+            Book book = books.get(bookId);
+            if (book != null) {
+                bookHits++;
+                return book;
+            }
+            bookMisses++;
+            stamp = generation;
+        }
+        Book book = db.loadBookById(bookId);
+        if (book != null) {
+            synchronized (books) {
+                if (generation == stamp) books.put(bookId, book);
+            }
+        }
+        return book;
+    }
+
+    /** Like {@link DatabaseManager#loadBorrowerName}; names of users that do not exist are not cached. */
+    String getBorrowerName(int userId) throws SQLException {
+        if (userId == 0) return db.loadBorrowerName(0);
+        synchronized (userNames) {
+            UserName cached = userNames.get(userId);
+            if (cached != null && System.nanoTime() - cached.loadedAt() < userTtlNanos) {
+                userHits++;
+                return cached.name();
+            }
+            userMisses++;
+        }
+        long loadedAt = System.nanoTime();
+        String name = db.loadBorrowerName(userId);
+        if (!name.equals("Unknown User")) {
+            synchronized (userNames) {
+                userNames.put(userId, new UserName(name, loadedAt));
+            }
+        }
+        return name;
+    }
+
+    private void invalidate(CatalogEvent event) {
+        synchronized (books) {
+            generation++;
+            switch (event) {
+                case CatalogEvent.BookDeleted deleted -> books.remove(deleted.book().id());
+                case CatalogEvent.BorrowStatusChanged changed -> books.remove(changed.after().id());
+                // Nothing is cached under a new id, because lookups that find no book are not cached.
+                case CatalogEvent.BookAdded added -> { }
+                case CatalogEvent.BooksImported imported -> { }
+            }
+        }
+    }
+
+    Stats stats() {
+        long bHits, bMisses, bEvictions, uHits, uMisses, uEvictions;
+        int bSize, uSize;
+        synchronized (books) {
+            bHits = bookHits;
+            bMisses = bookMisses;
+            bEvictions = books.evictions();
+            bSize = books.size();
+        }
+        synchronized (userNames) {
+            uHits = userHits;
+            uMisses = userMisses;
+            uEvictions = userNames.evictions();
+            uSize = userNames.size();
+        }
+        return new Stats(new MapStats(bHits, bMisses, bEvictions, bSize), new MapStats(uHits, uMisses, uEvictions, uSize));
+    }
+
+    record MapStats(long hits, long misses, long evictions, int entries) {
+        double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+    }
+
+    record Stats(MapStats books, MapStats users) {}
+
+    private record UserName(String name, long loadedAt) {}
+}
@@ -0,0 +1,17 @@
+package org.example;
+
+/**
+ * A committed change to the books table, published by {@link DatabaseManager} to its catalog
+ * listeners. Events carry the affected catalog rows so views can update a single row in
+ * place instead of re-reading the catalog.
+ */
+sealed interface CatalogEvent {
+    record BookAdded(CatalogRow book) implements CatalogEvent {}
+
+    record BookDeleted(CatalogRow book) implements CatalogEvent {}
+
+    record BorrowStatusChanged(CatalogRow before, CatalogRow after) implements CatalogEvent {}
+
+    /** Many rows were added at once by a bulk import; views should re-read rather than patch. */
+    record BooksImported(long count) implements CatalogEvent {}
+}
@@ -0,0 +1,466 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Streams a publisher catalog into the books table. The input is CSV with a header row naming
+ * {@code title}, {@code author} and optionally {@code image_path} (or {@code image_url}), or
+ * JSON Lines with one object per line using the same keys. Records are parsed one at a time
+ * and inserted in chunks of {@code batchSize} rows, each chunk in its own transaction.
+ * The number of records consumed is stored in the {@code imports} table in the same
+ * transaction, so an import that stops part way resumes exactly after the last committed
+ * chunk when it is run again. Records without a title or author are reported and skipped.
+ * Usage: {@code CatalogImporter <file> [--batch rows] [--restart] [--db path]}.
+ */
+public class CatalogImporter {
+    static final int DEFAULT_BATCH_SIZE = 50_000;
+    // 256 MB of page cache on the writer while a chunk is written, so index pages are not re-read.
+    private static final int IMPORT_CACHE_SIZE = -262_144;
+    private static final String INSERT_SQL = "INSERT INTO books(title, author, image_path) VALUES(?, ?, ?)";
+    private static final String SAVE_CHECKPOINT_SQL = "INSERT INTO imports(source, fingerprint, records, inserted, completed) VALUES(?, ?, ?, ?, ?) "
+            + "ON CONFLICT(source) DO UPDATE SET fingerprint = excluded.fingerprint, records = excluded.records, "
+            + "inserted = imports.inserted + excluded.inserted, completed = excluded.completed";
+    private static final int MAX_REPORTED_REJECTS = 20;
+
+    /** Receives progress after every committed chunk, on the importing thread. */
+    @FunctionalInterface
+    interface Listener {
+        void progress(Progress progress);
+
+        /** Polled between chunks; returning true stops the import after the last committed chunk. */
+        default boolean cancelled() { return false; }
+    }
+
+    /**
+     * Where an import stands. {@code records} counts every record read from the file so far,
+     * including the {@code resumedAt} records skipped because an earlier run committed them.
+     */
+    record Progress(long records, long resumedAt, long inserted, long rejected, long bytesRead, long totalBytes,
+                    long elapsedNanos, boolean completed) {
+        double rowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : inserted * 1e9 / elapsedNanos;
+        }
+
+        int percent() {
+            return totalBytes == 0 ? 100 : (int) Math.min(100, bytesRead * 100 / totalBytes);
+        }
+
+        /** True when an earlier run had already imported the whole file, so nothing was read. */
+        boolean alreadyImported() {
+            return completed && inserted == 0 && records > 0 && resumedAt == records;
+        }
+    }
+
+    private final ConnectionPool pool;
+    private final int batchSize;
+
+    CatalogImporter(ConnectionPool pool, int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize must be at least 1");
+        this.pool = pool;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Imports {@code file}, resuming after the last committed chunk of an earlier run unless
+     * {@code restart} is set. Returns the final progress; it is not {@code completed} if the
+     * listener cancelled the import. Rows committed before a failure stay in the database.
+     */
+    Progress importFile(Path file, boolean restart, Listener listener) throws IOException, SQLException {
+        String source = file.toAbsolutePath().normalize().toString();
+        long totalBytes = Files.size(file);
+        String fingerprint = totalBytes + ":" + Files.getLastModifiedTime(file).toMillis();
+        long start = System.nanoTime();
+
+        if (restart) clearCheckpoint(source);
+        long resumeAt = checkpoint(source, fingerprint);
+        if (resumeAt < 0) {
+            Progress done = new Progress(-resumeAt, -resumeAt, 0, 0, totalBytes, totalBytes, 0, true);
+            listener.progress(done);
+            return done;
+        }
+
+        try (CountingInputStream in = new CountingInputStream(Files.newInputStream(file));
+             RecordSource records = open(file, in)) {
+            long position = 0;
+            Entry entry = null;
+            while (position < resumeAt && (entry = records.next()) != null) {
+                position++;
+            }
+
+            long inserted = 0;
+            long rejected = 0;
+            List<Entry> chunk = new ArrayList<>(batchSize);
+            boolean completed = false;
+            while (!completed) {
+                if (listener.cancelled()) {
+                    return new Progress(position, resumeAt, inserted, rejected, in.count, totalBytes, System.nanoTime() - start, false);
+                }
+                chunk.clear();
+                while (chunk.size() < batchSize && (entry = records.next()) != null) {
+                    position++;
+                    if (entry.problem() == null) {
+                        chunk.add(entry);
+                    } else if (++rejected <= MAX_REPORTED_REJECTS) {
+                        System.err.println(file.getFileName() + ":" + entry.line() + ": skipped, " + entry.problem());
+                    }
+                }
+                completed = entry == null;
+                writeChunk(chunk, source, fingerprint, position, completed);
+                inserted += chunk.size();
+                listener.progress(new Progress(position, resumeAt, inserted, rejected, completed ? totalBytes : in.count,
+                        totalBytes, System.nanoTime() - start, completed));
+            }
+            if (rejected > MAX_REPORTED_REJECTS) {
+                System.err.println(file.getFileName() + ": " + (rejected - MAX_REPORTED_REJECTS) + " more records skipped");
+            }
+            return new Progress(position, resumeAt, inserted, rejected, totalBytes, totalBytes, System.nanoTime() - start, true);
+        }
+    }
+
+    /**
+     * Returns how many records of {@code source} are already committed, or minus that number
+     * if the file was imported completely.
+     */
+    private long checkpoint(String source, String fingerprint) throws SQLException, IOException {
+        try (ConnectionPool.PooledConnection conn = pool.acquireReader("importCheckpoint")) {
+            PreparedStatement pstmt = conn.prepare("SELECT fingerprint, records, completed FROM imports WHERE source = ?");
+            pstmt.setString(1, source);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) return 0;
+                if (!rs.getString("fingerprint").equals(fingerprint)) {
+                    throw new IOException(source + " has changed since it was last imported; import it with --restart to load it again from the start");
+                }
+                long records = rs.getLong("records");
+                return rs.getBoolean("completed") ? -records : records;
+            }
+        }
+    }
+
+    private void clearCheckpoint(String source) throws SQLException {
+        try (ConnectionPool.PooledConnection conn = pool.acquireWriter("clearImportCheckpoint")) {
+            PreparedStatement pstmt = conn.prepare("DELETE FROM imports WHERE source = ?");
+            pstmt.setString(1, source);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private void writeChunk(List<Entry> chunk, String source, String fingerprint, long position, boolean completed) throws SQLException {
+        try (ConnectionPool.PooledConnection conn = pool.acquireWriter("importBooks");
+             Statement stmt = conn.connection().createStatement()) {
+            long cacheSize = queryLong(stmt, "PRAGMA cache_size");
+            stmt.execute("PRAGMA cache_size = " + IMPORT_CACHE_SIZE);
+            conn.connection().setAutoCommit(false);
+            try {
+                if (!chunk.isEmpty()) insertRows(conn, stmt, chunk);
+                PreparedStatement checkpoint = conn.prepare(SAVE_CHECKPOINT_SQL);
+                checkpoint.setString(1, source);
+                checkpoint.setString(2, fingerprint);
+                checkpoint.setLong(3, position);
+                checkpoint.setLong(4, chunk.size());
+                checkpoint.setBoolean(5, completed);
+                checkpoint.executeUpdate();
+                conn.connection().commit();
+            } catch (SQLException e) {
+                conn.connection().rollback();
+                throw e;
+            } finally {
+                conn.connection().setAutoCommit(true);
+                stmt.execute("PRAGMA cache_size = " + cacheSize);
+            }
+        }
+    }
+
+    // Indexing the chunk for search in one statement is several times faster than the per-row
+    // trigger. The trigger is dropped and recreated inside the chunk's transaction, so no other
+    // connection ever sees the table without it.
+    private static void insertRows(ConnectionPool.PooledConnection conn, Statement stmt, List<Entry> chunk) throws SQLException {
+        String trigger;
+        try (ResultSet rs = stmt.executeQuery("SELECT sql FROM sqlite_master WHERE type = 'trigger' AND name = 'books_fts_insert'")) {
+            trigger = rs.next() ? rs.getString(1) : null;
+        }
+        long lastId = queryLong(stmt, "SELECT COALESCE(MAX(id), 0) FROM books");
+        if (trigger != null) stmt.execute("DROP TRIGGER books_fts_insert");
+
+        PreparedStatement insert = conn.prepare(INSERT_SQL);
+        for (Entry entry : chunk) {
+            insert.setString(1, entry.title());
+            insert.setString(2, entry.author());
+            insert.setString(3, entry.imagePath());
+            insert.addBatch();
+        }
+        insert.executeBatch();
+
+        if (trigger != null) {
+            PreparedStatement index = conn.prepare("INSERT INTO books_fts(rowid, title, author) SELECT id, title, author FROM books WHERE id > ?");
+            index.setLong(1, lastId);
+            index.executeUpdate();
+            stmt.execute(trigger);
+        }
+    }
+
+    private static long queryLong(Statement stmt, String sql) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static RecordSource open(Path file, InputStream in) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        Reader reader = new InputStreamReader(new BufferedInputStream(in, 1 << 16), StandardCharsets.UTF_8);
+        if (name.endsWith(".csv")) return new CsvSource(reader);
+        if (name.endsWith(".jsonl") || name.endsWith(".ndjson")) return new JsonLinesSource(reader);
+        reader.close();
+        throw new IOException("Unsupported catalog file " + file.getFileName() + "; expected .csv, .jsonl or .ndjson");
+    }
+
+    /** One record of the input; {@code problem} says why it cannot be imported, or is null. */
+    private record Entry(long line, String title, String author, String imagePath, String problem) {
+        static Entry of(long line, String title, String author, String imagePath) {
+            title = title == null ? "" : title.strip();
+            author = author == null ? "" : author.strip();
+            if (title.isEmpty() || author.isEmpty()) {
+                return new Entry(line, title, author, imagePath, "title and author are required");
+            }
+            return new Entry(line, title, author, imagePath == null || imagePath.isBlank() ? "" : imagePath.strip(), null);
+        }
+    }
+
+    private interface RecordSource extends Closeable {
+        /** Returns the next record, or null at the end of the input. */
+        Entry next() throws IOException;
+    }
+
+    /** RFC 4180 CSV: quoted fields may contain commas, doubled quotes and line breaks. */
+    private static final class CsvSource implements RecordSource {
+        private final Reader reader;
+        private final char[] buffer = new char[1 << 16];
+        private int length;
+        private int pos;
+        private long line = 1;
+        private final int titleColumn;
+        private final int authorColumn;
+        private final int imageColumn;
+        private final List<String> fields = new ArrayList<>();
+        private final StringBuilder field = new StringBuilder();
+
+        CsvSource(Reader reader) throws IOException {
+            this.reader = reader;
+            if (peek() == '\uFEFF') pos++; // byte order mark
+            if (!readRecord()) throw new IOException("CSV file is empty");
+            Map<String, Integer> header = new HashMap<>();
+            for (int i = 0; i < fields.size(); i++) {
+                header.putIfAbsent(fields.get(i).strip().toLowerCase(Locale.ROOT), i);
+            }
+            titleColumn = header.getOrDefault("title", -1);
+            authorColumn = header.getOrDefault("author", -1);
+            imageColumn = header.getOrDefault("image_path", header.getOrDefault("image_url", -1));
+            if (titleColumn < 0 || authorColumn < 0) {
+                throw new IOException("CSV header must name a title and an author column, found " + fields);
+            }
+        }
+
+        @Override
+        public Entry next() throws IOException {
+            long recordLine;
+            do {
+                recordLine = line;
+                if (!readRecord()) return null;
+            } while (fields.size() == 1 && fields.get(0).isEmpty()); // blank line
+            return Entry.of(recordLine, column(titleColumn), column(authorColumn), column(imageColumn));
+        }
+
+        private String column(int index) {
+            return index >= 0 && index < fields.size() ? fields.get(index) : null;
+        }
+
+        private boolean readRecord() throws IOException {
+            fields.clear();
+            if (peek() < 0) return false;
+            boolean quoted = false;
+            field.setLength(0);
+            while (true) {
+                int c = read();
+                if (quoted) {
+                    if (c < 0) throw new IOException("Unterminated quoted field at line " + line);
+                    if (c == '"') {
+                        if (peek() == '"') {
+                            field.append('"');
+                            pos++;
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        if (c == '\n') line++;
+                        field.append((char) c);
+                    }
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n' || c < 0) {
+                    if (c == '\n') line++;
+                    fields.add(field.toString());
+                    return true;
+                } else if (c == '\r') {
+                    if (peek() == '\n') pos++;
+                    line++;
+                    fields.add(field.toString());
+                    return true;
+                } else if (c == '"' && field.isEmpty()) {
+                    quoted = true;
+                } else {
+                    field.append((char) c);
+                }
+            }
+        }
+
+        private int read() throws IOException {
+            int c = peek();
+            if (c >= 0) pos++;
+            return c;
+        }
+
+        private int peek() throws IOException {
+            if (pos == length) {
+                length = reader.read(buffer, 0, buffer.length);
+                pos = 0;
+                if (length <= 0) {
+                    length = 0;
+                    return -1;
+                }
+            }
+            return buffer[pos];
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /** JSON Lines: one object per line. Keys other than the ones imported are skipped, whatever their value. */
+    private static final class JsonLinesSource implements RecordSource {
+        private final BufferedReader reader;
+        private long line;
+
+        JsonLinesSource(Reader reader) {
+            this.reader = new BufferedReader(reader, 1 << 16);
+        }
+
+        @Override
+        public Entry next() throws IOException {
+            String text;
+            do {
+                text = reader.readLine();
+                line++;
+                if (text == null) return null;
+            } while (text.isBlank());
+            if (line == 1 && text.charAt(0) == '\uFEFF') text = text.substring(1);
+            try {
+                Map<String, String> object = Json.parseObject(text);
+                String image = object.get("image_path");
+                return Entry.of(line, object.get("title"), object.get("author"), image != null ? image : object.get("image_url"));
+            } catch (IllegalArgumentException e) {
+                return new Entry(line, null, null, null, e.getMessage());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path file = null;
+        int batchSize = DEFAULT_BATCH_SIZE;
+        boolean restart = false;
+        String database = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--batch" -> batchSize = Integer.parseInt(args[++i]);
+                case "--restart" -> restart = true;
+                case "--db" -> database = args[++i];
+                default -> file = Paths.get(args[i]);
+            }
+        }
+        if (file == null) {
+            System.err.println("Usage: CatalogImporter <file.csv|file.jsonl> [--batch rows] [--restart] [--db path]");
+            System.exit(2);
+        }
+
+        DatabaseManager db = database == null ? new DatabaseManager() : new DatabaseManager(ConnectionPool.shared("jdbc:sqlite:" + database));
+        db.initializeDatabase();
+        long[] lastReport = {System.nanoTime()};
+        try {
+            Progress result = db.importBooks(file, batchSize, restart, progress -> {
+                if (System.nanoTime() - lastReport[0] >= 1_000_000_000L && !progress.completed()) {
+                    lastReport[0] = System.nanoTime();
+                    System.out.printf("%3d%%  %,d records, %,d inserted, %,.0f rows/sec%n",
+                            progress.percent(), progress.records(), progress.inserted(), progress.rowsPerSecond());
+                }
+            });
+            if (result.alreadyImported()) {
+                System.out.printf("%s was already imported (%,d records); use --restart to import it again%n", file, result.records());
+            } else {
+                System.out.printf("Imported %,d books from %s in %.2f s (%,.0f rows/sec), %,d records skipped as invalid%s%n",
+                        result.inserted(), file, result.elapsedNanos() / 1e9, result.rowsPerSecond(), result.rejected(),
+                        result.resumedAt() > 0 ? String.format(", resumed after record %,d", result.resumedAt()) : "");
+            }
+        } catch (IOException | SQLException e) {
+            System.err.println("Import stopped: " + e.getMessage());
+            System.err.println("Rows committed so far are kept; run the same command again to resume.");
+            System.exit(1);
+        } finally {
+            db.shutdown();
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package org.example;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * The whole catalog as column arrays for filtering and sorting in memory, built from a
+ * {@link CatalogSnapshot}. Titles and authors are replaced by their rank under the user's
+ * locale collation, worked out once per distinct string, so sorting compares ints instead of
+ * strings. Collation keys are by far the slowest part (seconds for a million rows), so they are
+ * worked out in the background by {@link #rankInBackground}; until a column is ranked, a query
+ * sorting by it returns rows in snapshot order instead of waiting, and {@link #canSortBy} says
+ * so. A query marks matching rows in a bitmap, then sorts (rank, row) pairs packed into
+ * longs; both steps run in parallel on the common fork-join pool. The result is a permutation
+ * of row numbers, and strings are only decoded from the mapped snapshot for rows on screen.
+ * Borrowers are updated in place as loans change; any other change needs a new index.
+ */
+final class CatalogIndex {
+    // Rows per block when the matches are gathered in parallel; a multiple of 64.
+    private static final int BLOCK_ROWS = 1 << 14;
+
+    /** Which rows a query keeps. {@code authorPrefix} ignores case and accents; 0 means any borrower. */
+    record Filter(String authorPrefix, boolean availableOnly, int borrowedBy) {
+        static final Filter NONE = new Filter(null, false, 0);
+
+        boolean isEmpty() {
+            return authorPrefix == null && !availableOnly && borrowedBy == 0;
+        }
+    }
+
+    private final CatalogSnapshot snapshot;
+    private final int rows;
+    private final int[] ids;
+    private final int[] titleCodes;
+    private final int[] authorCodes;
+    // Collation rank of every row's title and author, completed by rankInBackground.
+    private final CompletableFuture<int[]> titleRanks = new CompletableFuture<>();
+    private final CompletableFuture<int[]> authorRanks = new CompletableFuture<>();
+    private final AtomicBoolean ranking = new AtomicBoolean();
+    // Author codes in the order of their folded names, so a prefix is a contiguous range.
+    private final int[] authorsByFoldedName;
+    // (id << 32 | row), ascending, for finding a book's row.
+    private final long[] rowsById;
+    // Replaced as a whole on every change, so a running query keeps the array it started with.
+    private volatile int[] borrowers;
+    private final Map<Integer, String> borrowerNames;
+    // Collation ranks of "Available", "Unknown User" and every borrower name; reset when a name is added.
+    private volatile StatusRanks statusRanks;
+
+    private record StatusRanks(int available, int unknown, Map<Integer, Integer> users) { }
+
+    private CatalogIndex(CatalogSnapshot snapshot) {
+        this.snapshot = snapshot;
+        this.rows = snapshot.size();
+        this.ids = snapshot.ids();
+        this.borrowers = snapshot.borrowerIds();
+        this.borrowerNames = new ConcurrentHashMap<>(snapshot.borrowerNames());
+        this.titleCodes = snapshot.titleCodes();
+        this.authorCodes = snapshot.authorCodes();
+        this.authorsByFoldedName = foldedOrder(snapshot.authorCount(), snapshot::author);
+        this.rowsById = new long[rows];
+        IntStream.range(0, rows).parallel().forEach(row -> rowsById[row] = (long) ids[row] << 32 | row);
+        Arrays.parallelSort(rowsById);
+    }
+
+    /** Builds the index on the calling thread and the common pool, without collation ranks; see {@link #rankInBackground}. */
+    static CatalogIndex build(CatalogSnapshot snapshot) {
+        return new CatalogIndex(snapshot);
+    }
+
+    int size() { return rows; }
+
+    /**
+     * Starts ranking titles, then authors, on the common pool unless that has already started.
+     * Completes once {@link #canSortBy} holds for every column.
+     */
+    CompletableFuture<Void> rankInBackground() {
+        if (ranking.compareAndSet(false, true)) {
+            CompletableFuture.runAsync(() -> {
+                rank(titleRanks, titleCodes, snapshot.titleCount(), snapshot::title);
+                rank(authorRanks, authorCodes, snapshot.authorCount(), snapshot::author);
+            }, ForkJoinPool.commonPool());
+        }
+        return CompletableFuture.allOf(titleRanks, authorRanks);
+    }
+
+    /** Whether {@link #query} sorts by {@code column} yet, rather than returning snapshot order. */
+    boolean canSortBy(CatalogColumn column) {
+        return switch (column) {
+            case ID, STATUS -> true;
+            case TITLE -> isRanked(titleRanks);
+            case AUTHOR -> isRanked(authorRanks);
+        };
+    }
+
+    /**
+     * The matching rows of the catalog in {@code sort} order, as row numbers for {@link #row}.
+     * Rows come in snapshot order while {@code sort} is by a column not yet ranked; see
+     * {@link #canSortBy}.
+     */
+    int[] query(Filter filter, CatalogSort sort) {
+        boolean sorted = canSortBy(sort.column());
+        if (!sorted) rankInBackground();
+        int[] borrowers = this.borrowers;
+        boolean[] authorMatches = filter.authorPrefix() == null ? null : authorsStartingWith(filter.authorPrefix());
+        long[] words = new long[(rows + 63) >>> 6];
+        IntStream.range(0, words.length).parallel().forEach(w -> {
+            long word = 0;
+            for (int row = w << 6, end = Math.min(rows, (w + 1) << 6); row < end; row++) {
+                int borrower = borrowers[row];
+                if ((!filter.availableOnly() || borrower == 0)
+                        && (filter.borrowedBy() == 0 || borrower == filter.borrowedBy())
+                        && (authorMatches == null || authorMatches[authorCodes[row]])) {
+                    word |= 1L << row;
+                }
+            }
+            words[w] = word;
+        });
+
+        // Count the matches per block, then let every block write its keys at its own offset.
+        int wordsPerBlock = BLOCK_ROWS >>> 6;
+        int blocks = (words.length + wordsPerBlock - 1) / wordsPerBlock;
+        int[] offsets = new int[blocks + 1];
+        IntStream.range(0, blocks).parallel().forEach(b -> {
+            int count = 0;
+            for (int w = b * wordsPerBlock, end = Math.min(words.length, (b + 1) * wordsPerBlock); w < end; w++) {
+                count += Long.bitCount(words[w]);
+            }
+            offsets[b + 1] = count;
+        });
+        Arrays.parallelPrefix(offsets, Integer::sum);
+        IntUnaryOperator rankOf = sorted ? sortRank(sort.column(), borrowers) : row -> 0;
+        long[] keys = new long[offsets[blocks]];
+        IntStream.range(0, blocks).parallel().forEach(b -> {
+            int next = offsets[b];
+            for (int w = b * wordsPerBlock, end = Math.min(words.length, (b + 1) * wordsPerBlock); w < end; w++) {
+                for (long word = words[w]; word != 0; word &= word - 1) {
+                    int row = (w << 6) + Long.numberOfTrailingZeros(word);
+                    keys[next++] = (long) rankOf.applyAsInt(row) << 32 | row;
+                }
+            }
+        });
+        Arrays.parallelSort(keys);
+
+        int[] permutation = new int[keys.length];
+        int last = keys.length - 1;
+        boolean ascending = !sorted || sort.ascending();
+        IntStream.range(0, keys.length).parallel().forEach(i -> permutation[ascending ? i : last - i] = (int) keys[i]);
+        return permutation;
+    }
+
+    /** Decodes a row returned by {@link #query}, with its current borrower. */
+    CatalogRow row(int row) {
+        CatalogRow stored = snapshot.row(row);
+        int borrower = borrowers[row];
+        if (borrower == stored.borrowedByUserId()) return stored;
+        return new CatalogRow(stored.id(), stored.title(), stored.author(), stored.imagePath(), borrower, statusOf(borrower));
+    }
+
+    /**
+     * Records a new borrower for {@code book}. Returns false if the book is not in the index,
+     * which then needs rebuilding. Must not be called concurrently with itself.
+     */
+    boolean updateBorrower(CatalogRow book) {
+        int found = Arrays.binarySearch(rowsById, (long) book.id() << 32);
+        int position = found >= 0 ? found : -found - 1;
+        if (position >= rows || (int) (rowsById[position] >>> 32) != book.id()) return false;
+        int row = (int) rowsById[position];
+        if (book.borrowedByUserId() != 0 && !"Unknown User".equals(book.status())
+                && !book.status().equals(borrowerNames.put(book.borrowedByUserId(), book.status()))) {
+            statusRanks = null;
+        }
+        int[] updated = borrowers.clone();
+        updated[row] = book.borrowedByUserId();
+        borrowers = updated;
+        return true;
+    }
+
+    private String statusOf(int borrower) {
+        if (borrower == 0) return "Available";
+        return borrowerNames.getOrDefault(borrower, "Unknown User");
+    }
+
+    private IntUnaryOperator sortRank(CatalogColumn column, int[] borrowers) {
+        return switch (column) {
+            case ID -> row -> ids[row];
+            case TITLE -> {
+                int[] ranks = titleRanks.join();
+                yield row -> ranks[row];
+            }
+            case AUTHOR -> {
+                int[] ranks = authorRanks.join();
+                yield row -> ranks[row];
+            }
+            case STATUS -> {
+                StatusRanks ranks = statusRanks();
+                yield row -> borrowers[row] == 0 ? ranks.available() : ranks.users().getOrDefault(borrowers[row], ranks.unknown());
+            }
+        };
+    }
+
+    private synchronized StatusRanks statusRanks() {
+        StatusRanks ranks = statusRanks;
+        if (ranks == null) {
+            Map<Integer, String> names = new HashMap<>(borrowerNames);
+            String[] statuses = new String[names.size() + 2];
+            int[] userIds = new int[names.size()];
+            statuses[0] = "Available";
+            statuses[1] = "Unknown User";
+            int next = 0;
+            for (Map.Entry<Integer, String> entry : names.entrySet()) {
+                userIds[next] = entry.getKey();
+                statuses[2 + next++] = entry.getValue();
+            }
+            int[] collated = collationRanks(statuses.length, code -> statuses[code]);
+            Map<Integer, Integer> users = new HashMap<>();
+            for (int i = 0; i < userIds.length; i++) users.put(userIds[i], collated[2 + i]);
+            statusRanks = ranks = new StatusRanks(collated[0], collated[1], users);
+        }
+        return ranks;
+    }
+
+    private static void rank(CompletableFuture<int[]> ranks, int[] codes, int count, IntFunction<String> value) {
+        try {
+            ranks.complete(perRow(codes, collationRanks(count, value)));
+        } catch (RuntimeException | Error e) {
+            ranks.completeExceptionally(e);
+        }
+    }
+
+    // A column that failed to rank is never sorted by, rather than failing every query.
+    private static boolean isRanked(CompletableFuture<int[]> ranks) {
+        return ranks.isDone() && !ranks.isCompletedExceptionally();
+    }
+
+    private boolean[] authorsStartingWith(String prefix) {
+        String folded = fold(prefix);
+        int from = firstFoldedAtLeast(folded);
+        int to = firstFoldedAtLeast(folded + Character.MAX_VALUE);
+        boolean[] matches = new boolean[authorsByFoldedName.length];
+        for (int i = from; i < to; i++) {
+            matches[authorsByFoldedName[i]] = true;
+        }
+        return matches;
+    }
+
+    // Decodes only the authors the binary search probes.
+    private int firstFoldedAtLeast(String key) {
+        int low = 0;
+        int high = authorsByFoldedName.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (fold(snapshot.author(authorsByFoldedName[middle])).compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int[] perRow(int[] codes, int[] rankByCode) {
+        int[] ranks = new int[codes.length];
+        IntStream.range(0, codes.length).parallel().forEach(row -> ranks[row] = rankByCode[codes[row]]);
+        return ranks;
+    }
+
+    /** Dense ranks of {@code count} strings under the default locale's collation; equal strings share a rank. */
+    private static int[] collationRanks(int count, IntFunction<String> value) {
+        Collator prototype = Collator.getInstance();
+        prototype.setStrength(Collator.SECONDARY);
+        // Collators are not thread-safe.
+        ThreadLocal<Collator> collators = ThreadLocal.withInitial(() -> (Collator) prototype.clone());
+        CollationKey[] keys = new CollationKey[count];
+        IntStream.range(0, count).parallel().forEach(code -> keys[code] = collators.get().getCollationKey(value.apply(code)));
+        Integer[] order = new Integer[count];
+        Arrays.setAll(order, code -> code);
+        Arrays.parallelSort(order, (a, b) -> keys[a].compareTo(keys[b]));
+        int[] ranks = new int[count];
+        int rank = 0;
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && keys[order[i]].compareTo(keys[order[i - 1]]) != 0) rank++;
+            ranks[order[i]] = rank;
+        }
+        return ranks;
+    }
+
+    private static int[] foldedOrder(int count, IntFunction<String> value) {
+        String[] folded = new String[count];
+        IntStream.range(0, count).parallel().forEach(code -> folded[code] = fold(value.apply(code)));
+        Integer[] order = new Integer[count];
+        Arrays.setAll(order, code -> code);
+        Arrays.parallelSort(order, (a, b) -> folded[a].compareTo(folded[b]));
+        return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+    }
+
+    // Lower case without accents, so "émile" and "Emile" share a prefix.
+    private static String fold(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                folded.append(c);
+            }
+        }
+        return folded.toString().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,348 @@
+package org.example;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The whole catalog in {@link CatalogSort#DEFAULT} order as a memory-mapped, columnar file, so
+ * the dashboard can show its first screen before the database has answered a query. Ids,
+ * title, author and cover codes and borrower ids are int columns; titles, authors, covers and
+ * borrower names are dictionaries of UTF-8 strings. Opening maps the file and reads a few
+ * counts, and a row is only decoded when it is asked for, so the cost of a screenful does not
+ * depend on the size of the catalog. Each snapshot records the {@code catalog_version} it was
+ * written at; it is only current while the database still has that version.
+ * <p>
+ * The path a snapshot is opened and written by is a small manifest holding the name of the
+ * data file next to it. Every write goes to a new data file and then replaces the manifest, so a
+ * data file is never replaced while it is mapped: Windows refuses to replace or delete a file
+ * that any process has mapped. Data files the manifest no longer names are deleted on the next
+ * write, or on a later one if they are still mapped. The data file layout is:
+ * <pre>
+ * int magic, int format, long catalogVersion, int rows
+ * int[rows] ids, titleCodes, authorCodes, coverCodes, borrowerIds (0 = available)
+ * dictionary titles, authors, covers
+ * int users, int[users] userIds (ascending), int[users] nameCodes, dictionary names
+ * dictionary = int count, int[count + 1] offsets into the bytes, byte[offsets[count]] UTF-8
+ * </pre>
+ */
+final class CatalogSnapshot {
+    private static final int MAGIC = 0x4C424353; // "LBCS"
+    private static final int FORMAT = 1;
+    private static final int HEADER_BYTES = 20;
+    private static final int COLUMNS = 5;
+    private static final String DATA_SUFFIX = ".data";
+    private static final int MAX_MANIFEST_BYTES = 1024;
+
+    private final ByteBuffer buffer;
+    private final long version;
+    private final int rows;
+    private final Dictionary titles;
+    private final Dictionary authors;
+    private final Dictionary covers;
+    private final int[] userIds;
+    private final String[] userNames;
+
+    private CatalogSnapshot(ByteBuffer buffer) {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT) throw new IllegalArgumentException("Not a catalog snapshot");
+        this.buffer = buffer;
+        this.version = buffer.getLong(8);
+        this.rows = buffer.getInt(16);
+        if (rows < 0) throw new IllegalArgumentException("Negative row count");
+        int position = Math.addExact(HEADER_BYTES, Math.multiplyExact(COLUMNS * 4, rows));
+        titles = new Dictionary(buffer, position);
+        authors = new Dictionary(buffer, titles.end);
+        covers = new Dictionary(buffer, authors.end);
+        int users = buffer.getInt(covers.end);
+        userIds = new int[users];
+        int[] nameCodes = new int[users];
+        buffer.slice(covers.end + 4, users * 4).asIntBuffer().get(userIds);
+        buffer.slice(covers.end + 4 + users * 4, users * 4).asIntBuffer().get(nameCodes);
+        Dictionary names = new Dictionary(buffer, covers.end + 4 + users * 8);
+        userNames = new String[users];
+        for (int i = 0; i < users; i++) {
+            userNames[i] = names.get(nameCodes[i]);
+        }
+    }
+
+    /**
+     * Maps the data file the manifest at {@code file} names, or returns null if there is none or
+     * it is not a snapshot this version can read.
+     */
+    static CatalogSnapshot open(Path file) {
+        try {
+            Path data = dataFile(file);
+            if (data == null) throw new IOException("Not a catalog snapshot manifest");
+            try (FileChannel channel = FileChannel.open(data)) {
+                // The mapping stays valid after the channel is closed. A later write of the
+                // snapshot goes to a different data file, so this one is never replaced under it.
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                return new CatalogSnapshot(mapped);
+            }
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring catalog snapshot " + file + ": " + e);
+            return null;
+        }
+    }
+
+    /** Deletes the manifest at {@code file} and every data file written for it that is not mapped. */
+    static void delete(Path file) throws IOException {
+        Files.deleteIfExists(file);
+        deleteDataFiles(file, null);
+    }
+
+    // The data file named by the manifest, or null if the manifest names something else.
+    private static Path dataFile(Path manifest) throws IOException {
+        if (Files.size(manifest) > MAX_MANIFEST_BYTES) return null;
+        String name = Files.readString(manifest, StandardCharsets.UTF_8).strip();
+        String prefix = dataPrefix(manifest);
+        if (!name.startsWith(prefix) || !name.endsWith(DATA_SUFFIX) || name.contains("/") || name.contains("\\")) return null;
+        return manifest.resolveSibling(name);
+    }
+
+    private static String dataPrefix(Path manifest) {
+        return manifest.getFileName() + "-";
+    }
+
+    // Best effort: Windows refuses to delete a data file some process still has mapped, so that
+    // one goes on a later write.
+    private static void deleteDataFiles(Path manifest, Path keep) {
+        Path directory = manifest.toAbsolutePath().getParent();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, dataPrefix(manifest) + "*" + DATA_SUFFIX)) {
+            for (Path data : files) {
+                if (keep != null && data.getFileName().equals(keep.getFileName())) continue;
+                try {
+                    Files.deleteIfExists(data);
+                } catch (IOException e) {
+                    // Still mapped.
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not clean up old catalog snapshots: " + e);
+        }
+    }
+
+    /** The {@code catalog_version} of the database when this snapshot was written. */
+    long version() { return version; }
+
+    /** The size of the mapped data file. */
+    long byteSize() { return buffer.capacity(); }
+
+    int size() { return rows; }
+
+    /** Decodes the row at {@code index} in {@link CatalogSort#DEFAULT} order. */
+    CatalogRow row(int index) {
+        int id = column(0, index);
+        int borrower = column(4, index);
+        String status;
+        if (borrower == 0) {
+            status = "Available";
+        } else {
+            int user = Arrays.binarySearch(userIds, borrower);
+            status = user >= 0 ? userNames[user] : "Unknown User";
+        }
+        return new CatalogRow(id, titles.get(column(1, index)), authors.get(column(2, index)),
+                covers.get(column(3, index)), borrower, status);
+    }
+
+    /** Rows {@code from} (inclusive) to {@code to} (exclusive). */
+    List<CatalogRow> rows(int from, int to) {
+        List<CatalogRow> page = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) {
+            page.add(row(i));
+        }
+        return page;
+    }
+
+    private int column(int column, int index) {
+        return buffer.getInt(HEADER_BYTES + (column * rows + index) * 4);
+    }
+
+    // Bulk copies of the columns and dictionary lookups, for building a CatalogIndex.
+
+    int[] ids() { return copyColumn(0); }
+
+    int[] titleCodes() { return copyColumn(1); }
+
+    int[] authorCodes() { return copyColumn(2); }
+
+    int[] borrowerIds() { return copyColumn(4); }
+
+    int titleCount() { return titles.count; }
+
+    String title(int code) { return titles.get(code); }
+
+    int authorCount() { return authors.count; }
+
+    String author(int code) { return authors.get(code); }
+
+    /** The name of every borrower in the snapshot, by user id. */
+    Map<Integer, String> borrowerNames() {
+        Map<Integer, String> names = new HashMap<>();
+        for (int i = 0; i < userIds.length; i++) {
+            names.put(userIds[i], userNames[i]);
+        }
+        return names;
+    }
+
+    private int[] copyColumn(int column) {
+        int[] values = new int[rows];
+        buffer.slice(HEADER_BYTES + column * rows * 4, rows * 4).asIntBuffer().get(values);
+        return values;
+    }
+
+    /** A string table inside the mapped file; strings are decoded on each access. */
+    private static final class Dictionary {
+        private final ByteBuffer buffer;
+        final int count;
+        private final int offsets;
+        private final int bytes;
+        final int end;
+
+        Dictionary(ByteBuffer buffer, int position) {
+            this.buffer = buffer;
+            this.count = buffer.getInt(position);
+            this.offsets = position + 4;
+            this.bytes = Math.addExact(offsets, Math.multiplyExact(count + 1, 4));
+            this.end = Math.addExact(bytes, buffer.getInt(offsets + count * 4));
+            if (count < 0 || end > buffer.limit()) throw new BufferUnderflowException();
+        }
+
+        String get(int code) {
+            if (code < 0) return null;
+            int start = buffer.getInt(offsets + code * 4);
+            byte[] utf8 = new byte[buffer.getInt(offsets + (code + 1) * 4) - start];
+            buffer.get(bytes + start, utf8);
+            return new String(utf8, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Builds a snapshot from rows given in {@link CatalogSort#DEFAULT} order and writes it to a
+     * new data file, then points the manifest at it, so a reader never sees a half-written file.
+     */
+    static final class Writer {
+        private int[] ids = new int[1024];
+        private int[] titleCodes = new int[1024];
+        private int[] authorCodes = new int[1024];
+        private int[] coverCodes = new int[1024];
+        private int[] borrowerIds = new int[1024];
+        private int rows;
+        private final DictionaryBuilder titles = new DictionaryBuilder();
+        private final DictionaryBuilder authors = new DictionaryBuilder();
+        private final DictionaryBuilder covers = new DictionaryBuilder();
+        private final Map<Integer, String> borrowers = new HashMap<>();
+
+        void add(CatalogRow row) {
+            if (rows == ids.length) {
+                int capacity = rows * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                titleCodes = Arrays.copyOf(titleCodes, capacity);
+                authorCodes = Arrays.copyOf(authorCodes, capacity);
+                coverCodes = Arrays.copyOf(coverCodes, capacity);
+                borrowerIds = Arrays.copyOf(borrowerIds, capacity);
+            }
+            ids[rows] = row.id();
+            titleCodes[rows] = titles.code(row.title());
+            authorCodes[rows] = authors.code(row.author());
+            coverCodes[rows] = covers.code(row.imagePath());
+            borrowerIds[rows] = row.borrowedByUserId();
+            if (row.borrowedByUserId() != 0 && !"Unknown User".equals(row.status())) {
+                borrowers.putIfAbsent(row.borrowedByUserId(), row.status());
+            }
+            rows++;
+        }
+
+        /**
+         * Writes the rows added so far as the snapshot at {@code file}, marked with
+         * {@code version}, and returns the size of the data file.
+         */
+        long write(Path file, long version) throws IOException {
+            Path directory = file.toAbsolutePath().getParent();
+            Path data = Files.createTempFile(directory, dataPrefix(file), DATA_SUFFIX);
+            Path manifest = null;
+            boolean published = false;
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(data), 1 << 16))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(FORMAT);
+                    out.writeLong(version);
+                    out.writeInt(rows);
+                    ByteBuffer column = ByteBuffer.allocate(rows * 4);
+                    for (int[] values : new int[][]{ids, titleCodes, authorCodes, coverCodes, borrowerIds}) {
+                        column.clear();
+                        column.asIntBuffer().put(values, 0, rows);
+                        out.write(column.array());
+                    }
+                    titles.write(out);
+                    authors.write(out);
+                    covers.write(out);
+                    int[] userIds = borrowers.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+                    DictionaryBuilder names = new DictionaryBuilder();
+                    out.writeInt(userIds.length);
+                    for (int userId : userIds) out.writeInt(userId);
+                    for (int userId : userIds) out.writeInt(names.code(borrowers.get(userId)));
+                    names.write(out);
+                }
+                long size = Files.size(data);
+                // Nothing maps the manifest, so it can be replaced on every platform.
+                manifest = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+                Files.writeString(manifest, data.getFileName().toString(), StandardCharsets.UTF_8);
+                Files.move(manifest, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                published = true;
+                deleteDataFiles(file, data);
+                return size;
+            } finally {
+                if (!published) {
+                    Files.deleteIfExists(data);
+                    if (manifest != null) Files.deleteIfExists(manifest);
+                }
+            }
+        }
+    }
+
+    private static final class DictionaryBuilder {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<byte[]> values = new ArrayList<>();
+
+        // Null is stored as code -1, outside the table.
+        int code(String value) {
+            if (value == null) return -1;
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value.getBytes(StandardCharsets.UTF_8));
+            }
+            return code;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(values.size());
+            int offset = 0;
+            out.writeInt(offset);
+            for (byte[] value : values) {
+                offset += value.length;
+                out.writeInt(offset);
+            }
+            for (byte[] value : values) out.write(value);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.example;
+
+/** Columns the catalog can be ordered by, with the SQL expression each one sorts on. */
+enum CatalogColumn {
+    ID("b.id"),
+    TITLE("b.title"),
+    AUTHOR("b.author"),
+    STATUS(DatabaseManager.STATUS_SQL);
+
+    final String sqlExpression;
+
+    CatalogColumn(String sqlExpression) {
+        this.sqlExpression = sqlExpression;
+    }
+
+    /** The value of this column for a row, used as the keyset position of the next page. */
+    Object keyOf(CatalogRow row) {
+        return switch (this) {
+            case ID -> row.id();
+            case TITLE -> row.title();
+            case AUTHOR -> row.author();
+            case STATUS -> row.status();
+        };
+    }
+}
+
+/**
+ * An ORDER BY for catalog queries. The book id always breaks ties so that every row has a
+ * unique position, which keyset pagination relies on.
+ */
+record CatalogSort(CatalogColumn column, boolean ascending) {
+    static final CatalogSort DEFAULT = new CatalogSort(CatalogColumn.TITLE, true);
+
+    String orderBy() {
+        String direction = ascending ? " ASC" : " DESC";
+        if (column == CatalogColumn.ID) return "b.id" + direction;
+        return column.sqlExpression + direction + ", b.id" + direction;
+    }
+
+    /** A predicate selecting the rows strictly after a position; bind with {@link #keyParameters}. */
+    String after() {
+        String op = ascending ? " > " : " < ";
+        if (column == CatalogColumn.ID) return "b.id" + op + "?";
+        return "(" + column.sqlExpression + ", b.id)" + op + "(?, ?)";
+    }
+
+    /** A predicate selecting the rows strictly before a position; bind with {@link #keyParameters}. */
+    String before() {
+        String op = ascending ? " < " : " > ";
+        if (column == CatalogColumn.ID) return "b.id" + op + "?";
+        return "(" + column.sqlExpression + ", b.id)" + op + "(?, ?)";
+    }
+
+    Object[] keyParameters(CatalogRow row) {
+        if (column == CatalogColumn.ID) return new Object[]{row.id()};
+        return new Object[]{column.keyOf(row), row.id()};
+    }
+}
@@ -0,0 +1,349 @@
+package org.example;
+
+import jdk.jfr.EventType;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Long-lived SQLite connections for {@link DatabaseManager}.
+ * SQLite only ever allows one writer, so the pool keeps a single writer connection
+ * and a bounded set of reader connections. Every connection caches the prepared
+ * statements it has already parsed, keyed by their SQL text. Leases are acquired under an
+ * operation name and timed in the pool's {@link DatabaseMetrics}, and counted whether metrics
+ * are on or not, so {@link MaintenanceScheduler} can tell when the database is quiet.
+ */
+class ConnectionPool implements AutoCloseable {
+    private static final int DEFAULT_READERS = 4;
+    // Applied to every connection: durable at WAL checkpoints, 256 MB of memory-mapped reads, 16 MB page cache.
+    private static final String[] CONNECTION_PRAGMAS = {
+            "PRAGMA busy_timeout = 5000",
+            "PRAGMA synchronous = NORMAL",
+            "PRAGMA mmap_size = 268435456",
+            "PRAGMA cache_size = -16000",
+            "PRAGMA foreign_keys = ON"
+    };
+    private static final long ACQUIRE_TIMEOUT_MS = 30_000;
+    private static final Map<String, ConnectionPool> SHARED = new ConcurrentHashMap<>();
+    private static final EventType OPERATION_EVENT = EventType.getEventType(DatabaseOperationEvent.class);
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(ConnectionPool::closeShared, "connection-pool-shutdown"));
+    }
+
+    private final String url;
+    private final int maxReaders;
+    private final BlockingQueue<PooledConnection> idleReaders;
+    private final AtomicInteger openReaders = new AtomicInteger();
+    private final Semaphore writerPermit = new Semaphore(1, true);
+    private final List<PooledConnection> allConnections = new ArrayList<>();
+    private final DatabaseMetrics metrics;
+    private PooledConnection writer;
+    private volatile GroupCommitWriter groupCommit;
+    private volatile MaintenanceScheduler maintenance;
+    // Leases asked for so far, and those asked for but not yet released, waits included.
+    private final AtomicLong leasesStarted = new AtomicLong();
+    private final AtomicInteger leasesOpen = new AtomicInteger();
+    private volatile boolean closed;
+
+    ConnectionPool(String url, int maxReaders) {
+        if (maxReaders < 1) throw new IllegalArgumentException("maxReaders must be at least 1");
+        this.url = url;
+        this.maxReaders = maxReaders;
+        this.idleReaders = new ArrayBlockingQueue<>(maxReaders);
+        this.metrics = new DatabaseMetrics(url);
+    }
+
+    /** Returns the process-wide pool for the given JDBC URL, creating it on first use or after shutdown. */
+    static ConnectionPool shared(String url) {
+        return SHARED.compute(url, (u, pool) -> pool == null || pool.closed ? new ConnectionPool(u, DEFAULT_READERS) : pool);
+    }
+
+    static void closeShared() {
+        SHARED.values().forEach(ConnectionPool::close);
+        SHARED.clear();
+    }
+
+    String getUrl() { return url; }
+
+    DatabaseMetrics metrics() { return metrics; }
+
+    /**
+     * Switches writes that support it to group commit; see {@link GroupCommitWriter}. Only the
+     * first call creates the writer, later calls return it whatever their configuration.
+     */
+    synchronized GroupCommitWriter enableGroupCommit(GroupCommitWriter.Config config) {
+        if (groupCommit == null) {
+            groupCommit = new GroupCommitWriter(this, config);
+        }
+        return groupCommit;
+    }
+
+    /** The group commit writer, or null if writes commit one by one. */
+    GroupCommitWriter groupCommit() { return groupCommit; }
+
+    /** Starts background maintenance of the database; only the first call creates the scheduler. */
+    synchronized MaintenanceScheduler startMaintenance(MaintenanceScheduler.Config config) {
+        if (maintenance == null) {
+            maintenance = new MaintenanceScheduler(this, config);
+            maintenance.start();
+        }
+        return maintenance;
+    }
+
+    /** How many leases have been asked for since the pool was created. */
+    long leasesStarted() { return leasesStarted.get(); }
+
+    /** How many leases are held or being waited for right now. */
+    int leasesOpen() { return leasesOpen.get(); }
+
+    /**
+     * Leases a connection for queries. Release it by closing the returned handle; the time in
+     * between, including any wait for a free connection, is recorded under {@code operation}.
+     */
+    PooledConnection acquireReader(String operation) throws SQLException {
+        DatabaseMetrics.Operation stats = metrics.operation(operation);
+        long start = stats == null ? 0 : System.nanoTime();
+        leaseStarting();
+        try {
+            return acquireReaderConnection().begin(operation, stats, start, false);
+        } catch (SQLException e) {
+            leasesOpen.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void leaseStarting() {
+        leasesStarted.incrementAndGet();
+        leasesOpen.incrementAndGet();
+    }
+
+    private PooledConnection acquireReaderConnection() throws SQLException {
+        ensureOpen();
+        PooledConnection conn = idleReaders.poll();
+        if (conn != null) return conn;
+
+        int opened = openReaders.get();
+        while (opened < maxReaders) {
+            if (openReaders.compareAndSet(opened, opened + 1)) {
+                try {
+                    return open(this::releaseReader);
+                } catch (SQLException e) {
+                    openReaders.decrementAndGet();
+                    throw e;
+                }
+            }
+            opened = openReaders.get();
+        }
+
+        try {
+            conn = idleReaders.poll(ACQUIRE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        if (conn == null) throw new SQLException("Timed out waiting for a database connection");
+        return conn;
+    }
+
+    /** Leases the single writer connection, waiting for any other writer to finish first. */
+    PooledConnection acquireWriter(String operation) throws SQLException {
+        DatabaseMetrics.Operation stats = metrics.operation(operation);
+        long start = stats == null ? 0 : System.nanoTime();
+        leaseStarting();
+        try {
+            return acquireWriterConnection().begin(operation, stats, start, true);
+        } catch (SQLException e) {
+            leasesOpen.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private PooledConnection acquireWriterConnection() throws SQLException {
+        ensureOpen();
+        try {
+            if (!writerPermit.tryAcquire(ACQUIRE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for the writer connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the writer connection", e);
+        }
+        try {
+            synchronized (this) {
+                if (writer == null || writer.connection.isClosed()) {
+                    writer = open(c -> writerPermit.release());
+                }
+                return writer;
+            }
+        } catch (SQLException e) {
+            writerPermit.release();
+            throw e;
+        }
+    }
+
+    private PooledConnection open(Consumer<PooledConnection> release) throws SQLException {
+        Connection connection = DriverManager.getConnection(url);
+        try (Statement stmt = connection.createStatement()) {
+            for (String pragma : CONNECTION_PRAGMAS) {
+                stmt.execute(pragma);
+            }
+        }
+        PooledConnection conn = new PooledConnection(connection, metrics, leasesOpen, release);
+        metrics.connectionOpened();
+        synchronized (this) {
+            allConnections.add(conn);
+        }
+        return conn;
+    }
+
+    private void releaseReader(PooledConnection conn) {
+        if (closed || conn.isBroken() || !idleReaders.offer(conn)) {
+            openReaders.decrementAndGet();
+            conn.closeQuietly();
+        }
+    }
+
+    private void ensureOpen() throws SQLException {
+        if (closed) throw new SQLException("Connection pool for " + url + " has been shut down");
+    }
+
+    @Override
+    public void close() {
+        // Maintenance and queued group commits still need the writer connection.
+        MaintenanceScheduler running = maintenance;
+        if (running != null && !closed) running.close();
+        GroupCommitWriter pending = groupCommit;
+        if (pending != null && !closed) pending.close();
+        List<PooledConnection> toClose;
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            toClose = new ArrayList<>(allConnections);
+            allConnections.clear();
+            writer = null;
+        }
+        idleReaders.clear();
+        toClose.forEach(PooledConnection::closeQuietly);
+        metrics.close();
+    }
+
+    /**
+     * A leased connection together with its statement cache. Statements handed out by
+     * {@link #prepare} belong to the cache and must not be closed by callers.
+     */
+    static final class PooledConnection implements AutoCloseable {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+        private final DatabaseMetrics metrics;
+        private final AtomicInteger leasesOpen;
+        private final Consumer<PooledConnection> release;
+        // The current lease; only its holder touches these.
+        private String operation;
+        private DatabaseMetrics.Operation stats;
+        private long leasedAt;
+        private int rows;
+        private String lastSql;
+        private DatabaseOperationEvent event;
+
+        private PooledConnection(Connection connection, DatabaseMetrics metrics, AtomicInteger leasesOpen, Consumer<PooledConnection> release) {
+            this.connection = connection;
+            this.metrics = metrics;
+            this.leasesOpen = leasesOpen;
+            this.release = release;
+        }
+
+        private PooledConnection begin(String operation, DatabaseMetrics.Operation stats, long start, boolean writer) {
+            this.operation = operation;
+            this.stats = stats;
+            this.leasedAt = start;
+            this.rows = 0;
+            this.lastSql = null;
+            if (OPERATION_EVENT.isEnabled()) {
+                event = new DatabaseOperationEvent();
+                event.writer = writer;
+                event.begin();
+            }
+            return this;
+        }
+
+        Connection connection() { return connection; }
+
+        /** Counts rows the operation read, for {@link DatabaseMetrics}. */
+        void addRows(int count) {
+            rows += count;
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            return cached(sql, Statement.NO_GENERATED_KEYS);
+        }
+
+        PreparedStatement prepareWithKeys(String sql) throws SQLException {
+            return cached(sql, Statement.RETURN_GENERATED_KEYS);
+        }
+
+        private PreparedStatement cached(String sql, int generatedKeys) throws SQLException {
+            lastSql = sql;
+            String key = generatedKeys == Statement.RETURN_GENERATED_KEYS ? "K:" + sql : sql;
+            PreparedStatement pstmt = statements.get(key);
+            if (pstmt == null || pstmt.isClosed()) {
+                pstmt = connection.prepareStatement(sql, generatedKeys);
+                statements.put(key, pstmt);
+            } else {
+                pstmt.clearParameters();
+            }
+            return pstmt;
+        }
+
+        private boolean isBroken() {
+            try {
+                return connection.isClosed();
+            } catch (SQLException e) {
+                return true;
+            }
+        }
+
+        private void closeQuietly() {
+            for (PreparedStatement pstmt : statements.values()) {
+                try {
+                    pstmt.close();
+                } catch (SQLException ignored) {
+                }
+            }
+            statements.clear();
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+            }
+        }
+
+        @Override
+        public void close() {
+            metrics.operationFinished(stats, leasedAt, rows, lastSql);
+            if (event != null) {
+                event.operation = operation;
+                event.sql = lastSql;
+                event.rows = rows;
+                event.commit();
+                event = null;
+            }
+            leasesOpen.decrementAndGet();
+            release.accept(this);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package org.example;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of book covers already scaled to the size the dashboard shows them at.
+ * Lookups go to an in-memory LRU bounded by pixel bytes, then to PNG thumbnails on disk
+ * keyed by a hash of the URL, and only then to the URL itself. Concurrent requests for the
+ * same URL share a single load.
+ */
+class CoverImageCache {
+    static final int COVER_WIDTH = 200;
+    static final int COVER_HEIGHT = 300;
+    private static final long DEFAULT_MEMORY_BYTES = 64L * 1024 * 1024;
+    private static final Path DEFAULT_DIRECTORY = Paths.get("covers");
+
+    private static volatile CoverImageCache shared;
+
+    private final Path directory;
+    private final long maxMemoryBytes;
+    private final Executor executor;
+    private final LinkedHashMap<String, BufferedImage> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private final ConcurrentHashMap<String, CompletableFuture<BufferedImage>> inFlight = new ConcurrentHashMap<>();
+    private long memoryBytes; // guarded by memory
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    CoverImageCache(Path directory, long maxMemoryBytes, Executor executor) {
+        this.directory = directory;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.executor = executor;
+    }
+
+    /** The cache used by the dashboard, stored under ./covers next to the database. */
+    static CoverImageCache shared() {
+        if (shared == null) {
+            synchronized (CoverImageCache.class) {
+                if (shared == null) {
+                    ExecutorService loaders = Executors.newFixedThreadPool(4, r -> {
+                        Thread thread = new Thread(r, "cover-loader");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    shared = new CoverImageCache(DEFAULT_DIRECTORY, DEFAULT_MEMORY_BYTES, loaders);
+                }
+            }
+        }
+        return shared;
+    }
+
+    /** Returns the scaled cover if it is already in memory, without touching disk or network. */
+    BufferedImage getIfPresent(String url) {
+        synchronized (memory) {
+            BufferedImage image = memory.get(url);
+            if (image != null) memoryHits.increment();
+            return image;
+        }
+    }
+
+    /** Tells whether the cover is in memory, without counting a hit. */
+    boolean contains(String url) {
+        synchronized (memory) {
+            return memory.containsKey(url);
+        }
+    }
+
+    /** Returns the scaled cover for {@code url}, loading it in the background if necessary. */
+    CompletableFuture<BufferedImage> load(String url) {
+        return load(url, executor);
+    }
+
+    /** Like {@link #load(String)}, but a load that has to start runs on {@code loader}. */
+    CompletableFuture<BufferedImage> load(String url, Executor loader) {
+        BufferedImage cached = getIfPresent(url);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+
+        boolean[] created = new boolean[1];
+        CompletableFuture<BufferedImage> future = inFlight.computeIfAbsent(url, u -> {
+            created[0] = true;
+            return new CompletableFuture<>();
+        });
+        if (created[0]) {
+            loader.execute(() -> {
+                try {
+                    BufferedImage image = loadUncached(url);
+                    remember(url, image);
+                    future.complete(image);
+                } catch (Throwable t) {
+                    failures.increment();
+                    future.completeExceptionally(t);
+                } finally {
+                    inFlight.remove(url, future);
+                }
+            });
+        }
+        return future;
+    }
+
+    Stats stats() {
+        synchronized (memory) {
+            return new Stats(memoryHits.sum(), diskHits.sum(), misses.sum(), evictions.sum(), failures.sum(), memory.size(), memoryBytes);
+        }
+    }
+
+    private BufferedImage loadUncached(String url) throws IOException {
+        Path thumbnail = directory.resolve(hash(url) + ".png");
+        if (Files.isRegularFile(thumbnail)) {
+            BufferedImage image = ImageIO.read(thumbnail.toFile());
+            if (image != null) {
+                diskHits.increment();
+                return image;
+            }
+        }
+
+        misses.increment();
+        BufferedImage original = ImageIO.read(URI.create(url).toURL());
+        if (original == null) {
+            throw new IOException("Unsupported or missing image: " + url);
+        }
+        BufferedImage scaled = scale(original);
+        store(thumbnail, scaled);
+        return scaled;
+    }
+
+    private void store(Path thumbnail, BufferedImage image) {
+        try {
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, "cover-", ".tmp");
+            ImageIO.write(image, "png", temp.toFile());
+            Files.move(temp, thumbnail, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The memory copy is still usable; the cover is just fetched again after a restart.
+            System.err.println("Failed to store cover thumbnail: " + e.getMessage());
+        }
+    }
+
+    private void remember(String url, BufferedImage image) {
+        long size = sizeOf(image);
+        synchronized (memory) {
+            BufferedImage previous = memory.put(url, image);
+            memoryBytes += size - (previous == null ? 0 : sizeOf(previous));
+            Iterator<Map.Entry<String, BufferedImage>> eldest = memory.entrySet().iterator();
+            while (memoryBytes > maxMemoryBytes && eldest.hasNext()) {
+                Map.Entry<String, BufferedImage> entry = eldest.next();
+                if (entry.getKey().equals(url)) continue;
+                memoryBytes -= sizeOf(entry.getValue());
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    static BufferedImage scale(BufferedImage original) {
+        BufferedImage scaled = new BufferedImage(COVER_WIDTH, COVER_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(original, 0, 0, COVER_WIDTH, COVER_HEIGHT, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+
+    private static long sizeOf(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+
+    private static String hash(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(url.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    record Stats(long memoryHits, long diskHits, long misses, long evictions, long failures, int entries, long bytes) {}
+}
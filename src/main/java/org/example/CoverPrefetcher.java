@@ -0,0 +1,118 @@
+package org.example;
+
+import javax.swing.JTable;
+import javax.swing.JViewport;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warms {@link CoverImageCache} for the rows the user is about to select. It follows the
+ * direction the selection is moving in and loads the next few covers on a small pool of
+ * low-priority threads. Prefetches for rows that have scrolled out of range are cancelled
+ * before they start. Only rows whose page is already loaded are considered, so prefetching
+ * never causes extra catalog queries. All methods run on the event dispatch thread.
+ */
+class CoverPrefetcher {
+    private static final int LOOKAHEAD = 8;
+    private static final int THREADS = 2;
+
+    private final JTable table;
+    private final BookTableModel model;
+    private final CoverImageCache cache;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, Future<?>> scheduled = new HashMap<>();
+    private JViewport viewport;
+    private int lastSelectedRow = -1;
+    private int direction = 1;
+
+    CoverPrefetcher(JTable table, BookTableModel model, CoverImageCache cache) {
+        this.table = table;
+        this.model = model;
+        this.cache = cache;
+        this.executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "cover-prefetch");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+
+        table.getSelectionModel().addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) selectionMoved();
+        });
+        // Newly loaded pages make more rows eligible.
+        model.addTableModelListener(e -> reschedule());
+    }
+
+    void attach(JViewport viewport) {
+        this.viewport = viewport;
+        viewport.addChangeListener(e -> reschedule());
+    }
+
+    private void selectionMoved() {
+        int selected = table.getSelectedRow();
+        if (selected != -1 && lastSelectedRow != -1 && selected != lastSelectedRow) {
+            direction = selected > lastSelectedRow ? 1 : -1;
+        }
+        lastSelectedRow = selected;
+        reschedule();
+    }
+
+    private void reschedule() {
+        int rowCount = table.getRowCount();
+        if (rowCount == 0) {
+            cancelAllExcept(Set.of());
+            return;
+        }
+        int firstVisible = 0;
+        int lastVisible = rowCount - 1;
+        if (viewport != null) {
+            Rectangle view = viewport.getViewRect();
+            int top = table.rowAtPoint(view.getLocation());
+            int bottom = table.rowAtPoint(new Point(view.x, view.y + view.height - 1));
+            firstVisible = top == -1 ? 0 : top;
+            lastVisible = bottom == -1 ? rowCount - 1 : bottom;
+        }
+
+        int selected = table.getSelectedRow();
+        int anchor = selected != -1 ? selected : (direction > 0 ? firstVisible - 1 : lastVisible + 1);
+        int low = Math.max(0, firstVisible - LOOKAHEAD);
+        int high = Math.min(rowCount - 1, lastVisible + LOOKAHEAD);
+
+        // Nearest rows first, so they are at the head of the queue.
+        Set<String> wanted = new LinkedHashSet<>();
+        for (int step = 1; step <= LOOKAHEAD; step++) {
+            int row = anchor + step * direction;
+            if (row < low || row > high) break;
+            CatalogRow book = model.getLoadedRow(table.convertRowIndexToModel(row));
+            if (book != null && book.imagePath() != null && !book.imagePath().isEmpty() && !cache.contains(book.imagePath())) {
+                wanted.add(book.imagePath());
+            }
+        }
+
+        cancelAllExcept(wanted);
+        for (String url : wanted) {
+            if (!scheduled.containsKey(url)) {
+                scheduled.put(url, executor.submit(() -> cache.load(url, Runnable::run)));
+            }
+        }
+    }
+
+    private void cancelAllExcept(Set<String> wanted) {
+        // Finished entries stay while their row is in range, so a failed cover is not retried on every scroll.
+        scheduled.entrySet().removeIf(entry -> {
+            if (wanted.contains(entry.getKey())) return false;
+            entry.getValue().cancel(false);
+            return true;
+        });
+        executor.purge();
+    }
+}
@@ -0,0 +1,220 @@
+package org.example;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Counters and latency histograms for one {@link ConnectionPool}. Every connection lease is
+ * timed under the operation name it was acquired with, from the call to acquire until the
+ * lease is closed, and operations slower than a threshold are logged with their SQL.
+ * Settings come from system properties: {@code -Dlibrary.metrics=false} turns recording off,
+ * {@code -Dlibrary.metrics.slowOperationMs} sets the slow-operation threshold and
+ * {@code -Dlibrary.metrics.dumpSeconds} makes {@link DatabaseManager} print {@link #report}
+ * periodically. Each operation is also a {@link DatabaseOperationEvent} for Flight Recorder.
+ */
+class DatabaseMetrics implements DatabaseMetricsMXBean, AutoCloseable {
+    static final long DEFAULT_SLOW_OPERATION_MS = 200;
+
+    private final String database;
+    private final long createdAt = System.nanoTime();
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder slowOperations = new LongAdder();
+    private volatile boolean enabled;
+    private volatile long slowOperationNanos;
+    private ObjectName registeredAs; // guarded by this
+    private ScheduledExecutorService dumper; // guarded by this
+
+    DatabaseMetrics(String url) {
+        this.database = new File(url.substring(url.indexOf(':', "jdbc:".length()) + 1)).getName();
+        this.enabled = !"false".equalsIgnoreCase(System.getProperty("library.metrics"));
+        setSlowOperationThresholdMillis(Long.getLong("library.metrics.slowOperationMs", DEFAULT_SLOW_OPERATION_MS));
+    }
+
+    /** The dump interval from {@code -Dlibrary.metrics.dumpSeconds}, or null if not set. */
+    static Duration dumpIntervalFromSystemProperties() {
+        Long seconds = Long.getLong("library.metrics.dumpSeconds");
+        return seconds == null || seconds <= 0 ? null : Duration.ofSeconds(seconds);
+    }
+
+    /** The counters for {@code operation}, or null while recording is off. Pass it to {@link #operationFinished}. */
+    Operation operation(String operation) {
+        if (!enabled) return null;
+        Operation stats = operations.get(operation);
+        return stats != null ? stats : operations.computeIfAbsent(operation, Operation::new);
+    }
+
+    /** Records an operation that took from {@code startNanos} until now; {@code sql} may be null. */
+    void operationFinished(Operation operation, long startNanos, int rows, String sql) {
+        if (operation == null) return;
+        long elapsed = System.nanoTime() - startNanos;
+        operation.latency.record(elapsed);
+        if (rows > 0) operation.rows.add(rows);
+        if (elapsed >= slowOperationNanos) {
+            slowOperations.increment();
+            System.err.printf("Slow database operation %s took %.1f ms%s%n", operation.name,
+                    LatencyHistogram.Snapshot.millis(elapsed), sql == null ? "" : ": " + sql);
+        }
+    }
+
+    void connectionOpened() {
+        connectionsOpened.increment();
+    }
+
+    void errorRecorded() {
+        errors.increment();
+    }
+
+    /** Registers this as an MXBean, replacing metrics of an earlier pool for the same database. */
+    synchronized void registerMBean() {
+        if (registeredAs != null) return;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("org.example:type=DatabaseMetrics,database=" + ObjectName.quote(database));
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+            server.registerMBean(this, name);
+            registeredAs = name;
+        } catch (JMException e) {
+            System.err.println("Could not register database metrics with JMX: " + e);
+        }
+    }
+
+    /** Prints {@link #report} to standard output every {@code interval} until the pool closes. */
+    synchronized void startPeriodicDump(Duration interval) {
+        if (dumper != null) return;
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "database-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = interval.toMillis();
+        dumper.scheduleAtFixedRate(() -> System.out.print(report()), millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+        if (registeredAs != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredAs);
+            } catch (JMException ignored) {
+                // Already replaced by a newer pool for the same database.
+            }
+            registeredAs = null;
+        }
+    }
+
+    @Override
+    public boolean isEnabled() { return enabled; }
+
+    @Override
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    @Override
+    public long getSlowOperationThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(slowOperationNanos);
+    }
+
+    @Override
+    public void setSlowOperationThresholdMillis(long millis) {
+        slowOperationNanos = millis <= 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Override
+    public long getConnectionsOpened() { return connectionsOpened.sum(); }
+
+    @Override
+    public long getRowsRead() {
+        return operations.values().stream().mapToLong(stats -> stats.rows.sum()).sum();
+    }
+
+    @Override
+    public long getErrors() { return errors.sum(); }
+
+    @Override
+    public long getSlowOperations() { return slowOperations.sum(); }
+
+    @Override
+    public Map<String, Long> getOperationCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        snapshots().forEach((name, snapshot) -> counts.put(name, snapshot.count()));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getMeanMillis() { return millisOf(LatencyHistogram.Snapshot::meanNanos); }
+
+    @Override
+    public Map<String, Double> getP50Millis() { return millisOf(LatencyHistogram.Snapshot::p50Nanos); }
+
+    @Override
+    public Map<String, Double> getP99Millis() { return millisOf(LatencyHistogram.Snapshot::p99Nanos); }
+
+    @Override
+    public Map<String, Double> getMaxMillis() { return millisOf(LatencyHistogram.Snapshot::maxNanos); }
+
+    private Map<String, Double> millisOf(ToLongFunction<LatencyHistogram.Snapshot> nanos) {
+        Map<String, Double> millis = new TreeMap<>();
+        snapshots().forEach((name, snapshot) -> millis.put(name, LatencyHistogram.Snapshot.millis(nanos.applyAsLong(snapshot))));
+        return millis;
+    }
+
+    private Map<String, LatencyHistogram.Snapshot> snapshots() {
+        Map<String, LatencyHistogram.Snapshot> snapshots = new TreeMap<>();
+        operations.forEach((name, stats) -> snapshots.put(name, stats.latency.snapshot()));
+        return snapshots;
+    }
+
+    @Override
+    public String report() {
+        StringBuilder out = new StringBuilder();
+        long uptime = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - createdAt);
+        out.append(String.format("Database metrics for %s after %d:%02d:%02d%s%n", database,
+                uptime / 3600, uptime / 60 % 60, uptime % 60, enabled ? "" : " (recording is off)"));
+        out.append(String.format("  connections opened %,d, rows read %,d, errors %,d, slow operations %,d (over %d ms)%n",
+                getConnectionsOpened(), getRowsRead(), getErrors(), getSlowOperations(), getSlowOperationThresholdMillis()));
+        out.append(String.format("  %-24s %10s %9s %9s %9s %9s %9s %12s%n", "operation", "count", "mean ms", "p50 ms", "p90 ms", "p99 ms", "max ms", "rows"));
+        operations.entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(entry -> {
+            LatencyHistogram.Snapshot s = entry.getValue().latency.snapshot();
+            out.append(String.format("  %-24s %,10d %9.3f %9.3f %9.3f %9.3f %9.3f %,12d%n", entry.getKey(), s.count(),
+                    LatencyHistogram.Snapshot.millis(s.meanNanos()), LatencyHistogram.Snapshot.millis(s.p50Nanos()),
+                    LatencyHistogram.Snapshot.millis(s.p90Nanos()), LatencyHistogram.Snapshot.millis(s.p99Nanos()),
+                    LatencyHistogram.Snapshot.millis(s.maxNanos()), entry.getValue().rows.sum()));
+        });
+        return out.toString();
+    }
+
+    @Override
+    public void reset() {
+        operations.clear();
+        connectionsOpened.reset();
+        errors.reset();
+        slowOperations.reset();
+    }
+
+    static final class Operation {
+        private final String name;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder rows = new LongAdder();
+
+        private Operation(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.example;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link DatabaseMetrics}, registered as
+ * {@code org.example:type=DatabaseMetrics,database=<file>}. Latencies are per operation,
+ * keyed by the {@link DatabaseManager} method name, in milliseconds.
+ */
+public interface DatabaseMetricsMXBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getSlowOperationThresholdMillis();
+
+    void setSlowOperationThresholdMillis(long millis);
+
+    long getConnectionsOpened();
+
+    long getRowsRead();
+
+    long getErrors();
+
+    long getSlowOperations();
+
+    Map<String, Long> getOperationCounts();
+
+    Map<String, Double> getMeanMillis();
+
+    Map<String, Double> getP50Millis();
+
+    Map<String, Double> getP99Millis();
+
+    Map<String, Double> getMaxMillis();
+
+    /** The same text as the periodic dump. */
+    String report();
+
+    /** Clears every counter and histogram. */
+    void reset();
+}
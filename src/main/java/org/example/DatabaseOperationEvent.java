@@ -0,0 +1,36 @@
+package org.example;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A Flight Recorder event for one database operation: a connection lease from acquire to
+ * release, so it includes waiting for the connection. Recorded with
+ * {@code -XX:StartFlightRecording} or {@code jcmd <pid> JFR.start}; when no recording is
+ * running the event costs next to nothing.
+ */
+@Name("org.example.DatabaseOperation")
+@Label("Database Operation")
+@Category({"Library", "Database"})
+@Description("A DatabaseManager operation, from leasing a pooled connection to releasing it")
+@StackTrace(false)
+@Threshold("0 ms")
+class DatabaseOperationEvent extends Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("SQL")
+    @Description("The last statement the operation prepared")
+    String sql;
+
+    @Label("Rows Read")
+    int rows;
+
+    @Label("Writer")
+    boolean writer;
+}
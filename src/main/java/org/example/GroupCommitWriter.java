@@ -0,0 +1,207 @@
+package org.example;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Group commit for writes to a {@link ConnectionPool}. Mutations are queued to a single writer
+ * thread, which applies everything that arrives within {@code window} of the first one, up to
+ * {@code maxBatch} mutations, in one transaction. The transaction is committed with
+ * {@code synchronous = FULL}, so a mutation's future completes only once it is on disk, but the
+ * cost of that sync is shared by the whole batch. Each mutation runs in its own savepoint, so
+ * one that fails, with an SQLException or any RuntimeException, is rolled back on its own and
+ * the rest of the batch still commits.
+ */
+class GroupCommitWriter implements AutoCloseable {
+    /** Batching limits; a zero window only batches what queued up while the previous commit ran. */
+    record Config(int maxBatch, Duration window) {
+        // A window longer than it takes the batch to fill only adds latency; see DatabaseBenchmark groupcommit in benchmarks/.
+        static final Config DEFAULT = new Config(64, Duration.ofMillis(2));
+
+        Config {
+            if (maxBatch < 1) throw new IllegalArgumentException("maxBatch must be at least 1");
+            if (window.isNegative()) throw new IllegalArgumentException("window must not be negative");
+        }
+
+        /**
+         * Reads {@code -Dlibrary.groupCommit=true}, {@code -Dlibrary.groupCommit.maxBatch} and
+         * {@code -Dlibrary.groupCommit.windowMs}. Returns null unless group commit is switched on.
+         */
+        static Config fromSystemProperties() {
+            if (!Boolean.getBoolean("library.groupCommit")) return null;
+            return new Config(Integer.getInteger("library.groupCommit.maxBatch", DEFAULT.maxBatch),
+                    Duration.ofMillis(Long.getLong("library.groupCommit.windowMs", DEFAULT.window.toMillis())));
+        }
+    }
+
+    /** A change to apply on the writer connection. It must not commit or roll back. */
+    @FunctionalInterface
+    interface Mutation<T> {
+        T apply(ConnectionPool.PooledConnection conn) throws SQLException;
+    }
+
+    private static final long IDLE_POLL_MS = 100;
+
+    private final ConnectionPool pool;
+    private final Config config;
+    private final BlockingQueue<Pending<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean closed;
+
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder mutations = new LongAdder();
+
+    GroupCommitWriter(ConnectionPool pool, Config config) {
+        this.pool = pool;
+        this.config = config;
+        this.thread = new Thread(this::run, "group-commit");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    Config getConfig() { return config; }
+
+    /** Queues a mutation. The future completes with its result once the batch holding it has committed. */
+    <T> CompletableFuture<T> submit(Mutation<T> mutation) {
+        Pending<T> pending = new Pending<>(mutation, new CompletableFuture<>());
+        if (closed) {
+            pending.future.completeExceptionally(new SQLException("Group commit writer has been shut down"));
+        } else {
+            queue.add(pending);
+        }
+        return pending.future;
+    }
+
+    /** Queues a mutation and waits until it has committed. */
+    <T> T execute(Mutation<T> mutation) throws SQLException {
+        try {
+            return submit(mutation).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException sql) throw sql;
+            if (e.getCause() instanceof RuntimeException runtime) throw runtime;
+            throw e;
+        }
+    }
+
+    /** Commits and mutations so far; their ratio is the average batch size. */
+    long commits() { return commits.sum(); }
+
+    long mutations() { return mutations.sum(); }
+
+    private void run() {
+        List<Pending<?>> batch = new ArrayList<>(config.maxBatch());
+        long windowNanos = config.window().toNanos();
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Pending<?> first = queue.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < config.maxBatch()) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending<?> next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                closed = true; // nobody should interrupt this thread; stop after committing what is queued
+            }
+            if (!batch.isEmpty()) {
+                try {
+                    commit(batch);
+                } catch (Throwable t) {
+                    // Keeps the writer alive; the batch was rolled back, or never started.
+                    for (Pending<?> pending : batch) {
+                        pending.future.completeExceptionally(t);
+                    }
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<Pending<?>> batch) {
+        Object[] results = new Object[batch.size()];
+        Exception[] errors = new Exception[batch.size()];
+        try (ConnectionPool.PooledConnection conn = pool.acquireWriter("groupCommit");
+             Statement stmt = conn.connection().createStatement()) {
+            int synchronous;
+            try (ResultSet rs = stmt.executeQuery("PRAGMA synchronous")) {
+                synchronous = rs.next() ? rs.getInt(1) : 1;
+            }
+            stmt.execute("PRAGMA synchronous = FULL");
+            conn.connection().setAutoCommit(false);
+            try {
+                PreparedStatement savepoint = conn.prepare("SAVEPOINT mutation");
+                PreparedStatement release = conn.prepare("RELEASE mutation");
+                PreparedStatement rollback = conn.prepare("ROLLBACK TO mutation");
+                for (int i = 0; i < batch.size(); i++) {
+                    savepoint.execute();
+                    try {
+                        results[i] = batch.get(i).mutation.apply(conn);
+                    } catch (SQLException | RuntimeException e) {
+                        rollback.execute();
+                        errors[i] = e;
+                    }
+                    release.execute();
+                }
+                conn.connection().commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.connection().rollback();
+                throw e;
+            } finally {
+                conn.connection().setAutoCommit(true);
+                stmt.execute("PRAGMA synchronous = " + synchronous);
+            }
+        } catch (SQLException e) {
+            for (Pending<?> pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+            return;
+        }
+        commits.increment();
+        mutations.add(batch.size());
+        // Completed after the writer is released, so callers continuing on this thread can write again.
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).complete(results[i], errors[i]);
+        }
+    }
+
+    /** Commits everything already queued, then stops the writer thread. */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Anything that slipped in while the thread was exiting.
+        Pending<?> late;
+        while ((late = queue.poll()) != null) {
+            late.future.completeExceptionally(new SQLException("Group commit writer has been shut down"));
+        }
+    }
+
+    private record Pending<T>(Mutation<T> mutation, CompletableFuture<T> future) {
+        @SuppressWarnings("unchecked")
+        void complete(Object result, Exception error) {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete((T) result);
+            }
+        }
+    }
+}
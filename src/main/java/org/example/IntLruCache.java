@@ -0,0 +1,165 @@
+package org.example;
+
+import java.util.Arrays;
+
+/**
+ * A size-bounded map from {@code int} keys to values that evicts the least recently used
+ * entry. Keys are never boxed: entries live in parallel arrays, found through an
+ * open-addressing table and kept in recency order by an array-based doubly linked list.
+ * Not thread-safe.
+ */
+final class IntLruCache<V> {
+    private static final int NONE = -1;
+
+    private final int capacity;
+    private final int[] keys;
+    private final Object[] values;
+    private final int[] newer;
+    private final int[] older;
+    // Slot index + 1 for each hash bucket; 0 marks an empty bucket.
+    private final int[] table;
+    private final int mask;
+    private int size;
+    private int newest = NONE;
+    private int oldest = NONE;
+    private int freeSlots = NONE; // slots released by remove, chained through newer[]
+    private int nextUnusedSlot;
+    private long evictions;
+
+    IntLruCache(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        this.capacity = capacity;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        newer = new int[capacity];
+        older = new int[capacity];
+        // At most half full, so probe sequences stay short.
+        table = new int[Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1];
+        mask = table.length - 1;
+    }
+
+    /** Returns the value for {@code key} and marks it most recently used, or null. */
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        int slot = find(key);
+        if (slot == NONE) return null;
+        moveToNewest(slot);
+        return (V) values[slot];
+    }
+
+    void put(int key, V value) {
+        int slot = find(key);
+        if (slot != NONE) {
+            values[slot] = value;
+            moveToNewest(slot);
+            return;
+        }
+        if (size == capacity) {
+            evictions++;
+            remove(keys[oldest]);
+        }
+        slot = allocateSlot();
+        keys[slot] = key;
+        values[slot] = value;
+        int bucket = bucketOf(key);
+        while (table[bucket] != 0) bucket = (bucket + 1) & mask;
+        table[bucket] = slot + 1;
+        linkNewest(slot);
+        size++;
+    }
+
+    /** Removes {@code key}; returns whether it was present. */
+    boolean remove(int key) {
+        int bucket = bucketOf(key);
+        while (table[bucket] != 0) {
+            int slot = table[bucket] - 1;
+            if (keys[slot] == key) {
+                deleteBucket(bucket);
+                unlink(slot);
+                values[slot] = null;
+                newer[slot] = freeSlots;
+                freeSlots = slot;
+                size--;
+                return true;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+        return false;
+    }
+
+    void clear() {
+        Arrays.fill(table, 0);
+        Arrays.fill(values, null);
+        size = 0;
+        newest = oldest = freeSlots = NONE;
+        nextUnusedSlot = 0;
+    }
+
+    int size() { return size; }
+
+    int capacity() { return capacity; }
+
+    long evictions() { return evictions; }
+
+    private int find(int key) {
+        int bucket = bucketOf(key);
+        while (table[bucket] != 0) {
+            int slot = table[bucket] - 1;
+            if (keys[slot] == key) return slot;
+            bucket = (bucket + 1) & mask;
+        }
+        return NONE;
+    }
+
+    // Linear probing without tombstones: later entries of the probe run are shifted back into the gap.
+    private void deleteBucket(int gap) {
+        int bucket = gap;
+        while (true) {
+            bucket = (bucket + 1) & mask;
+            if (table[bucket] == 0) break;
+            int home = bucketOf(keys[table[bucket] - 1]);
+            // The entry may fill the gap unless its home lies cyclically in (gap, bucket].
+            boolean homeBetween = gap <= bucket ? gap < home && home <= bucket : gap < home || home <= bucket;
+            if (!homeBetween) {
+                table[gap] = table[bucket];
+                gap = bucket;
+            }
+        }
+        table[gap] = 0;
+    }
+
+    private int allocateSlot() {
+        if (freeSlots != NONE) {
+            int slot = freeSlots;
+            freeSlots = newer[slot];
+            return slot;
+        }
+        return nextUnusedSlot++;
+    }
+
+    private void moveToNewest(int slot) {
+        if (slot == newest) return;
+        unlink(slot);
+        linkNewest(slot);
+    }
+
+    private void linkNewest(int slot) {
+        older[slot] = newest;
+        newer[slot] = NONE;
+        if (newest != NONE) newer[newest] = slot;
+        newest = slot;
+        if (oldest == NONE) oldest = slot;
+    }
+
+    private void unlink(int slot) {
+        int before = older[slot];
+        int after = newer[slot];
+        if (before != NONE) newer[before] = after; else oldest = after;
+        if (after != NONE) older[after] = before; else newest = before;
+    }
+
+    private int bucketOf(int key) {
+        int h = key * 0x9E3779B9; // Fibonacci hashing spreads sequential ids across the table
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
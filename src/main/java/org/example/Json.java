@@ -0,0 +1,155 @@
+package org.example;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The little JSON the library needs without a JSON dependency: reading flat objects, as found
+ * in JSON Lines catalogs and HTTP request bodies, and escaping strings for responses.
+ */
+final class Json {
+    private Json() {
+    }
+
+    /**
+     * Parses one JSON object into its string and scalar members, with numbers and booleans as
+     * their literal text. Nulls, nested objects and arrays are skipped.
+     *
+     * @throws IllegalArgumentException if {@code text} is not a JSON object
+     */
+    static Map<String, String> parseObject(String text) {
+        return new Parser(text).parse();
+    }
+
+    /** Appends {@code value} as a JSON string literal, or {@code null}. */
+    static StringBuilder appendString(StringBuilder out, String value) {
+        if (value == null) return out.append("null");
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        return out.append('"');
+    }
+
+    private static final class Parser {
+        private final String text;
+        private int pos;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Map<String, String> parse() {
+            Map<String, String> members = new HashMap<>();
+            expect('{');
+            if (skipWhitespaceAndPeek() == '}') {
+                pos++;
+            } else {
+                while (true) {
+                    skipWhitespaceAndPeek();
+                    String key = string();
+                    expect(':');
+                    String value = value();
+                    if (value != null) members.put(key, value);
+                    char c = skipWhitespaceAndPeek();
+                    pos++;
+                    if (c == '}') break;
+                    if (c != ',') throw error("expected ',' or '}'");
+                }
+            }
+            if (skipWhitespaceAndPeek() != 0) throw error("unexpected text after the object");
+            return members;
+        }
+
+        // Returns strings and scalars as text, null for JSON null, objects and arrays.
+        private String value() {
+            char c = skipWhitespaceAndPeek();
+            if (c == '"') return string();
+            if (c == '{' || c == '[') {
+                skipNested();
+                return null;
+            }
+            int start = pos;
+            while (pos < text.length() && ",}]".indexOf(text.charAt(pos)) < 0 && !Character.isWhitespace(text.charAt(pos))) pos++;
+            String literal = text.substring(start, pos);
+            if (literal.isEmpty()) throw error("expected a value");
+            return literal.equals("null") ? null : literal;
+        }
+
+        private void skipNested() {
+            int depth = 0;
+            do {
+                if (pos >= text.length()) throw error("unterminated value");
+                char c = text.charAt(pos);
+                if (c == '"') {
+                    string();
+                    continue;
+                }
+                if (c == '{' || c == '[') depth++;
+                if (c == '}' || c == ']') depth--;
+                pos++;
+            } while (depth > 0);
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder out = new StringBuilder();
+            while (true) {
+                if (pos >= text.length()) throw error("unterminated string");
+                char c = text.charAt(pos++);
+                if (c == '"') return out.toString();
+                if (c != '\\') {
+                    out.append(c);
+                    continue;
+                }
+                if (pos >= text.length()) throw error("unterminated string");
+                char escaped = text.charAt(pos++);
+                switch (escaped) {
+                    case 'b' -> out.append('\b');
+                    case 'f' -> out.append('\f');
+                    case 'n' -> out.append('\n');
+                    case 'r' -> out.append('\r');
+                    case 't' -> out.append('\t');
+                    case 'u' -> {
+                        if (pos + 4 > text.length()) throw error("bad unicode escape");
+                        try {
+                            out.append((char) Integer.parseInt(text, pos, pos + 4, 16));
+                        } catch (NumberFormatException e) {
+                            throw error("bad unicode escape");
+                        }
+                        pos += 4;
+                    }
+                    default -> out.append(escaped);
+                }
+            }
+        }
+
+        private void expect(char expected) {
+            if (skipWhitespaceAndPeek() != expected) throw error("expected '" + expected + "'");
+            pos++;
+        }
+
+        private char skipWhitespaceAndPeek() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+            return pos < text.length() ? text.charAt(pos) : 0;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("malformed JSON, " + message + " at column " + (pos + 1));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.example;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations in nanoseconds with log-linear buckets, after
+ * HdrHistogram: every power of two is split into {@value #SUB_BUCKETS} equal buckets, so any
+ * recorded value is reported to within about 3% whatever its magnitude. Values up to
+ * {@code 2^40} ns (about 18 minutes) are kept in a fixed array of counters; longer ones land
+ * in the last bucket. Recording is one atomic increment and never allocates; the mean is
+ * estimated from the buckets like the percentiles.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final long MAX_TRACKABLE = (1L << 40) - 1;
+    private static final int BUCKETS = indexOf(MAX_TRACKABLE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(indexOf(Math.min(nanos, MAX_TRACKABLE)));
+        long currentMax = max.get();
+        while (nanos > currentMax && !max.compareAndSet(currentMax, nanos)) {
+            currentMax = max.get();
+        }
+    }
+
+    // Values below 2 * SUB_BUCKETS get a bucket each; above that the top SUB_BUCKET_BITS + 1
+    // bits pick the bucket, so bucket width doubles with every power of two.
+    private static int indexOf(long value) {
+        if (value < 2 * SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    private static long highestValueIn(int index) {
+        if (index < 2 * SUB_BUCKETS) return index;
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long lowest = (long) (index - (shift << SUB_BUCKET_BITS)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    private static long midpointOf(int index) {
+        if (index < 2 * SUB_BUCKETS) return index;
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        return highestValueIn(index) - ((1L << shift) - 1) / 2;
+    }
+
+    Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        double sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+            if (copy[i] != 0) sum += copy[i] * (double) midpointOf(i);
+        }
+        long maxNanos = max.get();
+        return new Snapshot(count, count == 0 ? 0 : Math.min((long) (sum / count), maxNanos),
+                valueAt(copy, count, 0.50, maxNanos), valueAt(copy, count, 0.90, maxNanos),
+                valueAt(copy, count, 0.99, maxNanos), valueAt(copy, count, 0.999, maxNanos), maxNanos);
+    }
+
+    private static long valueAt(long[] counts, long count, double percentile, long maxNanos) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(highestValueIn(i), maxNanos);
+        }
+        return maxNanos;
+    }
+
+    /** Durations in nanoseconds as of one moment; the percentiles are bucket upper bounds. */
+    record Snapshot(long count, long meanNanos, long p50Nanos, long p90Nanos, long p99Nanos, long p999Nanos, long maxNanos) {
+        static double millis(long nanos) {
+            return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+}
@@ -2,14 +2,27 @@ package org.example;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
-import javax.swing.table.DefaultTableModel;
-import javax.swing.table.TableRowSorter;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
 import java.io.File; // Import the File class
-import java.net.URL;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.*;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
 
 // --- DATA CLASSES (No changes) ---
 class User {
@@ -48,38 +61,82 @@ class Book {
     public int getBorrowedByUserId() { return borrowedByUserId; }
 }
 
+/**
+ * One row of the dashboard catalog: a book joined with the display name of its borrower.
+ * {@code status} is "Available", the borrower's name, or "Unknown User" for a dangling id.
+ */
+record CatalogRow(int id, String title, String author, String imagePath, int borrowedByUserId, String status) {
+    public boolean isAvailable() { return borrowedByUserId == 0; }
+}
+
+/** One borrow or return from the loan history. {@code title} is null once the book has been deleted. */
+record LoanEvent(long id, int bookId, String title, int userId, boolean returned, long atMillis) {}
+
+/** How often a book has been borrowed, counting every loan since the history began. */
+record BookLoanCount(int bookId, String title, String author, long loans) {}
+
+/** Borrows and returns on one UTC day. */
+record DailyLoanVolume(LocalDate day, int borrows, int returns) {}
+
 // --- DATABASE LOGIC ---
 class DatabaseManager {
     private static final String DB_URL = "jdbc:sqlite:library_v2.db";
+    static final String STATUS_SQL = "CASE WHEN b.borrowed_by_user_id IS NULL THEN 'Available' ELSE COALESCE(u.name, 'Unknown User') END";
+    private static final String CATALOG_SELECT = "SELECT b.id, b.title, b.author, b.image_path, b.borrowed_by_user_id, " + STATUS_SQL + " AS status "
+            + "FROM books b LEFT JOIN users u ON u.id = b.borrowed_by_user_id";
+
+    private final ConnectionPool pool;
+    private final PasswordHasher passwords = PasswordHasher.shared();
+    private final List<Consumer<CatalogEvent>> catalogListeners = new CopyOnWriteArrayList<>();
+
+    public DatabaseManager() {
+        this(ConnectionPool.shared(DB_URL));
+        GroupCommitWriter.Config groupCommit = GroupCommitWriter.Config.fromSystemProperties();
+        if (groupCommit != null) {
+            pool.enableGroupCommit(groupCommit);
+        }
+        pool.metrics().registerMBean();
+        Duration metricsDump = DatabaseMetrics.dumpIntervalFromSystemProperties();
+        if (metricsDump != null) {
+            pool.metrics().startPeriodicDump(metricsDump);
+        }
+        MaintenanceScheduler.Config maintenance = MaintenanceScheduler.Config.fromSystemProperties(
+                Path.of(pool.getUrl().substring("jdbc:sqlite:".length())));
+        if (maintenance != null) {
+            pool.startMaintenance(maintenance);
+        }
+    }
+
+    DatabaseManager(ConnectionPool pool) {
+        this.pool = pool;
+    }
 
     public void initializeDatabase() {
         // --- NEW CODE TO PRINT DATABASE PATH ---
-        File dbFile = new File("library_v2.db");
+        File dbFile = new File(pool.getUrl().substring("jdbc:sqlite:".length()));
         System.out.println("---------------------------------------------------------");
         System.out.println("Attempting to connect to database at absolute path:");
         System.out.println(dbFile.getAbsolutePath());
         System.out.println("---------------------------------------------------------");
 
-        String createUserTableSql = "CREATE TABLE IF NOT EXISTS users (id INTEGER PRIMARY KEY, name TEXT NOT NULL, email TEXT NOT NULL UNIQUE, password TEXT NOT NULL);";
-        String createBookTableSql = "CREATE TABLE IF NOT EXISTS books (id INTEGER PRIMARY KEY, title TEXT NOT NULL, author TEXT NOT NULL, image_path TEXT, borrowed_by_user_id INTEGER DEFAULT 0);";
-
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             Statement stmt = conn.createStatement()) {
-            stmt.execute(createUserTableSql);
-            stmt.execute(createBookTableSql);
+        try (ConnectionPool.PooledConnection conn = pool.acquireWriter("initializeDatabase")) {
+            new SchemaMigrator().migrate(conn.connection());
         } catch (SQLException e) {
             handleError(e);
         }
     }
 
     // ... All other DatabaseManager methods remain the same ...
+    /** Stores a new user with a salted hash of {@code password}; see {@link PasswordHasher}. */
     public User registerUser(String name, String email, String password) {
         String sql = "INSERT INTO users(name, email, password) VALUES(?, ?, ?)";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        // Hashed before taking the writer, which must not wait on the hashing pool.
+        String passwordHash = passwords.hash(password);
+        try (ConnectionPool.PooledConnection conn = pool.acquireWriter("registerUser")) {
+            PreparedStatement pstmt = conn.prepareWithKeys(sql);
             pstmt.setString(1, name);
             pstmt.setString(2, email);
-            pstmt.setString(3, password);
+            pstmt.setString(3, passwordHash);
             int affectedRows = pstmt.executeUpdate();
             if (affectedRows > 0) {
                 try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
@@ -94,34 +151,93 @@ class DatabaseManager {
         return null;
     }
 
+    /** Like {@link #loginUserAsync}, waiting for the result on the calling thread. */
     public User loginUser(String email, String password) {
-        String sql = "SELECT id, name, email FROM users WHERE email = ? AND password = ?";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try {
+            return loginUserAsync(email, password).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) throw runtime;
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the user's password hash here and checks it on the {@link PasswordHasher} pool. The
+     * future completes with the user, or null if the email or password is wrong, and fails with
+     * a {@link java.util.concurrent.RejectedExecutionException} when too many logins are queued.
+     * A hash made at a lower cost than the current one is replaced after a successful login.
+     */
+    public CompletableFuture<User> loginUserAsync(String email, String password) {
+        String sql = "SELECT id, name, email, password FROM users WHERE email = ?";
+        User user = null;
+        String passwordHash = null;
+        try (ConnectionPool.PooledConnection conn = pool.acquireReader("loginUser")) {
+            PreparedStatement pstmt = conn.prepare(sql);
             pstmt.setString(1, email);
-            pstmt.setString(2, password);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return new User(rs.getInt("id"), rs.getString("name"), rs.getString("email"));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    conn.addRows(1);
+                    user = new User(rs.getInt("id"), rs.getString("name"), rs.getString("email"));
+                    passwordHash = rs.getString("password");
+                }
             }
         } catch (SQLException e) {
             handleError(e);
         }
-        return null;
+        // An unknown email is still checked, against a decoy, so it is not faster to reject.
+        User found = user;
+        String stored = passwordHash;
+        return passwords.verifyAsync(password, stored).thenApply(matches -> {
+            if (!matches) return null;
+            if (passwords.needsRehash(stored)) {
+                rehashPassword(found.getId(), password, stored);
+            }
+            return found;
+        });
+    }
+
+    private void rehashPassword(int userId, String password, String oldHash) {
+        passwords.hashAsync(password).thenAccept(newHash -> {
+            // Only if the password has not been changed in the meantime.
+            String sql = "UPDATE users SET password = ? WHERE id = ? AND password = ?";
+            try (ConnectionPool.PooledConnection conn = pool.acquireWriter("rehashPassword")) {
+                PreparedStatement pstmt = conn.prepare(sql);
+                pstmt.setString(1, newHash);
+                pstmt.setInt(2, userId);
+                pstmt.setString(3, oldHash);
+                pstmt.executeUpdate();
+            } catch (SQLException e) {
+                handleError(e);
+            }
+        }).exceptionally(e -> {
+            // The old hash still works; the upgrade is tried again at the next login.
+            System.err.println("Could not upgrade the password hash of user " + userId + ": " + e.getMessage());
+            return null;
+        });
     }
 
     public String getBorrowerName(int userId) {
+        try {
+            return loadBorrowerName(userId);
+        } catch (SQLException e) {
+            handleError(e);
+        }
+        return "Unknown User";
+    }
+
+    /** Like {@link #getBorrowerName}, failing with the SQLException instead of reporting it. */
+    String loadBorrowerName(int userId) throws SQLException {
         if (userId == 0) return "Available";
         String sql = "SELECT name FROM users WHERE id = ?";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (ConnectionPool.PooledConnection conn = pool.acquireReader("getBorrowerName")) {
+            PreparedStatement pstmt = conn.prepare(sql);
             pstmt.setInt(1, userId);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return rs.getString("name");
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    conn.addRows(1);
+                    return rs.getString("name");
+                }
             }
-        } catch (SQLException e) {
-            handleError(e);
         }
         return "Unknown User";
     }
@@ -129,100 +245,578 @@ class DatabaseManager {
     public List<Book> getAllBooks() {
         List<Book> books = new ArrayList<>();
         String sql = "SELECT * FROM books ORDER BY title";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        try (ConnectionPool.PooledConnection conn = pool.acquireReader("getAllBooks");
+             ResultSet rs = conn.prepare(sql).executeQuery()) {
             while (rs.next()) {
                 books.add(new Book(rs.getInt("id"), rs.getString("title"), rs.getString("author"), rs.getString("image_path"), rs.getInt("borrowed_by_user_id")));
             }
+            conn.addRows(books.size());
         } catch (SQLException e) {
             handleError(e);
         }
         return books;
     }
 
+    /** Returns every book with its borrower name resolved in a single joined query, ordered by title. */
+    public List<CatalogRow> getCatalogRows() {
+        List<CatalogRow> rows = new ArrayList<>();
+        String sql = CATALOG_SELECT + " ORDER BY b.title";
+        try (ConnectionPool.PooledConnection conn = pool.acquireReader("getCatalogRows");
+             ResultSet rs = conn.prepare(sql).executeQuery()) {
+            readCatalogRows(conn, rs, rows);
+        } catch (SQLException e) {
+            handleError(e);
+        }
+        return rows;
+    }
+
+    public int countBooks() {
+        try {
+            return loadBookCount();
+        } catch (SQLException e) {
+            handleError(e);
+        }
+        return 0;
+    }
+
+    /** Like {@link #countBooks}, failing with the SQLException instead of reporting it. */
+    int loadBookCount() throws SQLException {
+        try (ConnectionPool.PooledConnection conn = pool.acquireReader("countBooks");
+             ResultSet rs = conn.prepare("SELECT COUNT(*) FROM books").executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} catalog rows that follow {@code after} in the given order,
+     * or the first rows when {@code after} is null. Seeks through the index instead of counting
+     * past skipped rows, so the cost does not grow with the page position.
+     */
+    public List<CatalogRow> getCatalogPage(CatalogSort sort, CatalogRow after, int limit) {
+        try {
+            return loadCatalogPage(sort, after, limit);
+        } catch (SQLException e) {
+            handleError(e);
+        }
+        return new ArrayList<>();
+    }
+
+    /** Like {@link #getCatalogPage}, failing with the SQLException instead of reporting it. */
+    List<CatalogRow> loadCatalogPage(CatalogSort sort, CatalogRow after, int limit) throws SQLException {
+        List<CatalogRow> rows = new ArrayList<>();
+        String where = after == null ? "" : " WHERE " + sort.after();
+        String sql = CATALOG_SELECT + where + " ORDER BY " + sort.orderBy() + " LIMIT ?";
+        try (ConnectionPool.PooledConnection conn = pool.acquireReader("getCatalogPage")) {
+            PreparedStatement pstmt = conn.prepare(sql);
+            int index = 1;
+            if (after != null) {
+                for (Object key : sort.keyParameters(after)) {
+                    pstmt.setObject(index++, key);
+                }
+            }
+            pstmt.setInt(index, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                readCatalogRows(conn, rs, rows);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Returns catalog rows by position, for jumps to a page whose predecessor is not known.
+     * The skipped rows are counted in an id-only subquery that can be answered from the index.
+     */
+    public List<CatalogRow> getCatalogPageAt(CatalogSort sort, int offset, int limit) {
+        try {
+            return loadCatalogPageAt(sort, offset, limit);
+        } catch (SQLException e) {
+            handleError(e);
+        }
+        return new ArrayList<>();
+    }
+
+    /** Like {@link #getCatalogPageAt}, failing with the SQLException instead of reporting it. */
+    List<CatalogRow> loadCatalogPageAt(CatalogSort sort, int offset, int limit) throws SQLException {
+        List<CatalogRow> rows = new ArrayList<>();
+        String join = sort.column() == CatalogColumn.STATUS ? " LEFT JOIN users u ON u.id = b.borrowed_by_user_id" : "";
+        String sql = CATALOG_SELECT + " WHERE b.id IN (SELECT b.id FROM books b" + join
+                + " ORDER BY " + sort.orderBy() + " LIMIT ? OFFSET ?) ORDER BY " + sort.orderBy();
+        try (ConnectionPool.PooledConnection conn = pool.acquireReader("getCatalogPageAt")) {
+            PreparedStatement pstmt = conn.prepare(sql);
+            pstmt.setInt(1, limit);
+            pstmt.setInt(2, offset);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                readCatalogRows(conn, rs, rows);
+            }
+        }
+        return rows;
+    }
+
+    private static void readCatalogRows(ConnectionPool.PooledConnection conn, ResultSet rs, List<CatalogRow> rows) throws SQLException {
+        int before = rows.size();
+        while (rs.next()) {
+            rows.add(new CatalogRow(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getInt(5), rs.getString(6)));
+        }
+        conn.addRows(rows.size() - before);
+    }
+
     public Book getBookById(int bookId) {
+        try {
+            return loadBookById(bookId);
+        } catch (SQLException e) {
+            handleError(e);
+        }
+        return null;
+    }
+
+    /** Like {@link #getBookById}, failing with the SQLException instead of reporting it. */
+    Book loadBookById(int bookId) throws SQLException {
         String sql = "SELECT * FROM books WHERE id = ?";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (ConnectionPool.PooledConnection conn = pool.acquireReader("getBookById")) {
+            PreparedStatement pstmt = conn.prepare(sql);
             pstmt.setInt(1, bookId);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return new Book(rs.getInt("id"), rs.getString("title"), rs.getString("author"), rs.getString("image_path"), rs.getInt("borrowed_by_user_id"));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    conn.addRows(1);
+                    return new Book(rs.getInt("id"), rs.getString("title"), rs.getString("author"), rs.getString("image_path"), rs.getInt("borrowed_by_user_id"));
+                }
             }
-        } catch (SQLException e) {
-            handleError(e);
         }
         return null;
     }
 
     public void addBook(String title, String author, String imagePath) {
         String sql = "INSERT INTO books(title, author, image_path) VALUES(?, ?, ?)";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        CatalogEvent event = null;
+        try (ConnectionPool.PooledConnection conn = pool.acquireWriter("addBook")) {
+            PreparedStatement pstmt = conn.prepareWithKeys(sql);
             pstmt.setString(1, title);
             pstmt.setString(2, author);
             pstmt.setString(3, imagePath);
             pstmt.executeUpdate();
+            try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                if (generatedKeys.next()) {
+                    event = new CatalogEvent.BookAdded(new CatalogRow(generatedKeys.getInt(1), title, author, imagePath, 0, "Available"));
+                }
+            }
         } catch (SQLException e) {
             handleError(e);
         }
+        publish(event);
+    }
+
+    /**
+     * Borrows a book for {@code userId} if it is on the shelf. The availability check and the
+     * update are a single statement, so of several concurrent borrowers exactly one succeeds
+     * and the others get {@link LoanOutcome#ALREADY_BORROWED}. Returns null if the update failed.
+     */
+    public LoanOutcome tryBorrow(int bookId, int userId) {
+        if (userId <= 0) throw new IllegalArgumentException("Not a user id: " + userId);
+        return changeLoan("tryBorrow", "UPDATE books SET borrowed_by_user_id = ? WHERE id = ? AND borrowed_by_user_id IS NULL",
+                bookId, userId, LoanOutcome.BORROWED, borrower -> LoanOutcome.ALREADY_BORROWED);
+    }
+
+    /**
+     * Returns a book {@code userId} has borrowed. Reports {@link LoanOutcome#NOT_BORROWED} if it
+     * is already back and {@link LoanOutcome#BORROWED_BY_SOMEONE_ELSE} if another user has it.
+     */
+    public LoanOutcome tryReturn(int bookId, int userId) {
+        if (userId <= 0) throw new IllegalArgumentException("Not a user id: " + userId);
+        return changeLoan("tryReturn", "UPDATE books SET borrowed_by_user_id = NULL WHERE borrowed_by_user_id = ? AND id = ?",
+                bookId, userId, LoanOutcome.RETURNED,
+                borrower -> borrower == 0 ? LoanOutcome.NOT_BORROWED : LoanOutcome.BORROWED_BY_SOMEONE_ELSE);
+    }
+
+    // The statement takes the user id, then the book id. When it changes nothing, conflict picks
+    // the outcome from the book's current borrower, 0 if none.
+    private LoanOutcome changeLoan(String operation, String sql, int bookId, int userId, LoanOutcome success, IntFunction<LoanOutcome> conflict) {
+        return writeBorrowStatus(operation, conn -> {
+            CatalogRow before = hasCatalogListeners() ? readCatalogRow(conn, bookId) : null;
+            PreparedStatement pstmt = conn.prepare(sql);
+            pstmt.setInt(1, userId);
+            pstmt.setInt(2, bookId);
+            if (pstmt.executeUpdate() > 0) {
+                return new Change<>(success, before == null ? null : new CatalogEvent.BorrowStatusChanged(before, readCatalogRow(conn, bookId)));
+            }
+            PreparedStatement current = conn.prepare("SELECT borrowed_by_user_id FROM books WHERE id = ?");
+            current.setInt(1, bookId);
+            try (ResultSet rs = current.executeQuery()) {
+                return new Change<>(rs.next() ? conflict.apply(rs.getInt(1)) : LoanOutcome.NOT_FOUND, null);
+            }
+        });
     }
 
+    /**
+     * Sets or clears the borrower unconditionally, whatever the current state. Borrowing and
+     * returning on behalf of a user should go through {@link #tryBorrow} and {@link #tryReturn}.
+     */
     public void updateBookBorrowStatus(int bookId, int userId) {
-        String sql = "UPDATE books SET borrowed_by_user_id = ? WHERE id = ?";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        // A user id of 0 means "returned", which the schema stores as NULL.
+        String sql = "UPDATE books SET borrowed_by_user_id = NULLIF(?, 0) WHERE id = ?";
+        writeBorrowStatus("updateBookBorrowStatus", conn -> {
+            CatalogRow before = hasCatalogListeners() ? readCatalogRow(conn, bookId) : null;
+            PreparedStatement pstmt = conn.prepare(sql);
             pstmt.setInt(1, userId);
             pstmt.setInt(2, bookId);
-            pstmt.executeUpdate();
+            if (pstmt.executeUpdate() > 0 && before != null) {
+                return new Change<>(null, new CatalogEvent.BorrowStatusChanged(before, readCatalogRow(conn, bookId)));
+            }
+            return new Change<>(null, null);
+        });
+    }
+
+    /** A write's result together with the event to publish once it has committed. */
+    private record Change<T>(T result, CatalogEvent event) {}
+
+    // Borrows and returns are the high-volume writes, so they go through group commit when the
+    // pool has it enabled; the call then returns once the batch holding the change is on disk.
+    private <T> T writeBorrowStatus(String operation, GroupCommitWriter.Mutation<Change<T>> mutation) {
+        Change<T> change;
+        try {
+            GroupCommitWriter groupCommit = pool.groupCommit();
+            if (groupCommit != null) {
+                // The writer's own lease is timed as one "groupCommit" per batch.
+                DatabaseMetrics.Operation stats = pool.metrics().operation(operation);
+                long start = System.nanoTime();
+                change = groupCommit.execute(mutation);
+                pool.metrics().operationFinished(stats, start, 0, null);
+            } else {
+                try (ConnectionPool.PooledConnection conn = pool.acquireWriter(operation)) {
+                    change = mutation.apply(conn);
+                }
+            }
         } catch (SQLException e) {
             handleError(e);
+            return null;
         }
+        publish(change.event());
+        return change.result();
     }
 
     public void deleteBook(int id) {
         String sql = "DELETE FROM books WHERE id = ?";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        CatalogEvent event = null;
+        try (ConnectionPool.PooledConnection conn = pool.acquireWriter("deleteBook")) {
+            CatalogRow before = hasCatalogListeners() ? readCatalogRow(conn, id) : null;
+            PreparedStatement pstmt = conn.prepare(sql);
             pstmt.setInt(1, id);
-            pstmt.executeUpdate();
+            if (pstmt.executeUpdate() > 0 && before != null) {
+                event = new CatalogEvent.BookDeleted(before);
+            }
+        } catch (SQLException e) {
+            handleError(e);
+        }
+        publish(event);
+    }
+
+    /**
+     * Streams a CSV or JSON Lines catalog into the books table in batched transactions; see
+     * {@link CatalogImporter}. Instead of one event per row, listeners get a single
+     * {@link CatalogEvent.BooksImported} afterwards, also when the import stops part way.
+     */
+    public CatalogImporter.Progress importBooks(Path file, int batchSize, boolean restart, CatalogImporter.Listener listener)
+            throws IOException, SQLException {
+        long[] inserted = new long[1];
+        try {
+            return new CatalogImporter(pool, batchSize).importFile(file, restart, new CatalogImporter.Listener() {
+                @Override
+                public void progress(CatalogImporter.Progress progress) {
+                    inserted[0] = progress.inserted();
+                    listener.progress(progress);
+                }
+
+                @Override
+                public boolean cancelled() {
+                    return listener.cancelled();
+                }
+            });
+        } finally {
+            if (inserted[0] > 0) publish(new CatalogEvent.BooksImported(inserted[0]));
+        }
+    }
+
+    /** Registers a listener for committed catalog changes. It is called on the thread that made the change. */
+    public void addCatalogListener(Consumer<CatalogEvent> listener) {
+        catalogListeners.add(listener);
+    }
+
+    public void removeCatalogListener(Consumer<CatalogEvent> listener) {
+        catalogListeners.remove(listener);
+    }
+
+    private boolean hasCatalogListeners() {
+        return !catalogListeners.isEmpty();
+    }
+
+    // Called after the writer lease is released so listeners never run while holding the writer.
+    private void publish(CatalogEvent event) {
+        if (event == null) return;
+        for (Consumer<CatalogEvent> listener : catalogListeners) {
+            listener.accept(event);
+        }
+    }
+
+    private static CatalogRow readCatalogRow(ConnectionPool.PooledConnection conn, int bookId) throws SQLException {
+        PreparedStatement pstmt = conn.prepare(CATALOG_SELECT + " WHERE b.id = ?");
+        pstmt.setInt(1, bookId);
+        List<CatalogRow> rows = new ArrayList<>(1);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            readCatalogRows(conn, rs, rows);
+        }
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * Full-text search over title and author. Every word in {@code query} must match the start
+     * of a word in the book, so "har pot" finds "Harry Potter". Results are ranked by BM25,
+     * with title matches weighted above author matches.
+     */
+    public List<CatalogRow> searchBooks(String query, int limit, int offset) {
+        try {
+            return loadSearchResults(query, limit, offset);
+        } catch (SQLException e) {
+            handleError(e);
+        }
+        return new ArrayList<>();
+    }
+
+    /** Like {@link #searchBooks}, failing with the SQLException instead of reporting it. */
+    List<CatalogRow> loadSearchResults(String query, int limit, int offset) throws SQLException {
+        List<CatalogRow> rows = new ArrayList<>();
+        String match = toMatchExpression(query);
+        if (match == null) return rows;
+        String sql = CATALOG_SELECT + " JOIN books_fts ON books_fts.rowid = b.id WHERE books_fts MATCH ? "
+                + "ORDER BY bm25(books_fts, 2.0, 1.0), b.id LIMIT ? OFFSET ?";
+        try (ConnectionPool.PooledConnection conn = pool.acquireReader("searchBooks")) {
+            PreparedStatement pstmt = conn.prepare(sql);
+            pstmt.setString(1, match);
+            pstmt.setInt(2, limit);
+            pstmt.setInt(3, offset);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                readCatalogRows(conn, rs, rows);
+            }
+        }
+        return rows;
+    }
+
+    public int countSearchResults(String query) {
+        try {
+            return loadSearchResultCount(query);
+        } catch (SQLException e) {
+            handleError(e);
+        }
+        return 0;
+    }
+
+    /** Like {@link #countSearchResults}, failing with the SQLException instead of reporting it. */
+    int loadSearchResultCount(String query) throws SQLException {
+        String match = toMatchExpression(query);
+        if (match == null) return 0;
+        try (ConnectionPool.PooledConnection conn = pool.acquireReader("countSearchResults")) {
+            PreparedStatement pstmt = conn.prepare("SELECT COUNT(*) FROM books_fts WHERE books_fts MATCH ?");
+            pstmt.setString(1, match);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    // Quotes each word so user input can never be parsed as FTS5 syntax, then makes it a prefix term.
+    private static String toMatchExpression(String query) {
+        StringBuilder match = new StringBuilder();
+        for (String word : query.split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) continue;
+            if (match.length() > 0) match.append(' ');
+            match.append('"').append(word).append("\"*");
+        }
+        return match.length() == 0 ? null : match.toString();
+    }
+
+    /**
+     * The user's most recent borrows and returns, newest first. Reads the history through an
+     * index on the user, so the cost depends on {@code limit}, not on how long the history is.
+     */
+    public List<LoanEvent> getLoanHistory(int userId, int limit) {
+        List<LoanEvent> loans = new ArrayList<>();
+        String sql = "SELECT l.id, l.book_id, b.title, l.user_id, l.returned, l.at FROM loans l "
+                + "LEFT JOIN books b ON b.id = l.book_id WHERE l.user_id = ? ORDER BY l.id DESC LIMIT ?";
+        try (ConnectionPool.PooledConnection conn = pool.acquireReader("getLoanHistory")) {
+            PreparedStatement pstmt = conn.prepare(sql);
+            pstmt.setInt(1, userId);
+            pstmt.setInt(2, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    loans.add(new LoanEvent(rs.getLong(1), rs.getInt(2), rs.getString(3), rs.getInt(4), rs.getBoolean(5), rs.getLong(6)));
+                }
+            }
+            conn.addRows(loans.size());
         } catch (SQLException e) {
             handleError(e);
         }
+        return loans;
     }
 
-    private void handleError(SQLException e) {
-        JOptionPane.showMessageDialog(null, "Database Error: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+    /** How many books the user has on loan right now, from the running totals. */
+    public int getActiveLoanCount(int userId) {
+        try (ConnectionPool.PooledConnection conn = pool.acquireReader("getActiveLoanCount")) {
+            PreparedStatement pstmt = conn.prepare("SELECT active FROM user_loan_counts WHERE user_id = ?");
+            pstmt.setInt(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            handleError(e);
+        }
+        return 0;
+    }
+
+    /** The {@code limit} books borrowed most often, read off an index on the running totals. */
+    public List<BookLoanCount> getMostBorrowed(int limit) {
+        List<BookLoanCount> books = new ArrayList<>();
+        String sql = "SELECT c.book_id, b.title, b.author, c.loans FROM book_loan_counts c "
+                + "JOIN books b ON b.id = c.book_id ORDER BY c.loans DESC, c.book_id LIMIT ?";
+        try (ConnectionPool.PooledConnection conn = pool.acquireReader("getMostBorrowed")) {
+            PreparedStatement pstmt = conn.prepare(sql);
+            pstmt.setInt(1, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    books.add(new BookLoanCount(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getLong(4)));
+                }
+            }
+            conn.addRows(books.size());
+        } catch (SQLException e) {
+            handleError(e);
+        }
+        return books;
+    }
+
+    /** Borrows and returns per day for the latest {@code days} days that had any, newest first. */
+    public List<DailyLoanVolume> getDailyLoanVolume(int days) {
+        List<DailyLoanVolume> volume = new ArrayList<>();
+        try (ConnectionPool.PooledConnection conn = pool.acquireReader("getDailyLoanVolume")) {
+            PreparedStatement pstmt = conn.prepare("SELECT day, borrows, returns FROM daily_loans ORDER BY day DESC LIMIT ?");
+            pstmt.setInt(1, days);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    volume.add(new DailyLoanVolume(LocalDate.parse(rs.getString(1)), rs.getInt(2), rs.getInt(3)));
+                }
+            }
+            conn.addRows(volume.size());
+        } catch (SQLException e) {
+            handleError(e);
+        }
+        return volume;
+    }
+
+    /** The catalog change counter, bumped by triggers on every change to books or to borrower names. */
+    public long getCatalogVersion() {
+        try (ConnectionPool.PooledConnection conn = pool.acquireReader("getCatalogVersion");
+             ResultSet rs = conn.prepare("SELECT version FROM catalog_version WHERE id = 1").executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (SQLException e) {
+            handleError(e);
+        }
+        return 0;
+    }
+
+    /** Where the {@link CatalogSnapshot} of this database is kept: next to the database file. */
+    Path getCatalogSnapshotPath() {
+        return Path.of(pool.getUrl().substring("jdbc:sqlite:".length()) + ".snapshot");
+    }
+
+    /**
+     * Writes the whole catalog to {@code file} as a {@link CatalogSnapshot} and returns the
+     * catalog version it is marked with. The version is read first, so a change made while the
+     * rows are read leaves the snapshot looking older than it is, never newer.
+     */
+    public long writeCatalogSnapshot(Path file) throws IOException, SQLException {
+        long version = getCatalogVersion();
+        String sql = CATALOG_SELECT + " ORDER BY " + CatalogSort.DEFAULT.orderBy();
+        CatalogSnapshot.Writer writer = new CatalogSnapshot.Writer();
+        try (ConnectionPool.PooledConnection conn = pool.acquireReader("writeCatalogSnapshot");
+             ResultSet rs = conn.prepare(sql).executeQuery()) {
+            int rows = 0;
+            while (rs.next()) {
+                writer.add(new CatalogRow(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getInt(5), rs.getString(6)));
+                rows++;
+            }
+            conn.addRows(rows);
+        }
+        writer.write(file, version);
+        return version;
+    }
+
+    /** Returns how many books sort strictly before {@code row}, i.e. the row's position in that order. */
+    public int countBefore(CatalogSort sort, CatalogRow row) {
+        String join = sort.column() == CatalogColumn.STATUS ? " LEFT JOIN users u ON u.id = b.borrowed_by_user_id" : "";
+        String sql = "SELECT COUNT(*) FROM books b" + join + " WHERE " + sort.before();
+        try (ConnectionPool.PooledConnection conn = pool.acquireReader("countBefore")) {
+            PreparedStatement pstmt = conn.prepare(sql);
+            int index = 1;
+            for (Object key : sort.keyParameters(row)) {
+                pstmt.setObject(index++, key);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            handleError(e);
+        }
+        return 0;
+    }
+
+    /** Closes the pooled connections. The shared pool is also closed by a JVM shutdown hook. */
+    public void shutdown() {
+        pool.close();
+    }
+
+    // Also reports the failed CatalogCache lookups of AsyncDatabaseManager.
+    void handleError(SQLException e) {
+        pool.metrics().errorRecorded();
         e.printStackTrace();
+        if (!GraphicsEnvironment.isHeadless()) {
+            SwingUtilities.invokeLater(() ->
+                    JOptionPane.showMessageDialog(null, "Database Error: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE));
+        }
     }
 }
 
 // --- UI (VIEW) CLASSES (No changes) ---
 class DashboardFrame extends JFrame {
-    private final DatabaseManager dbManager;
+    private final AsyncDatabaseManager dbManager;
     private final User currentUser;
     private final JTable bookTable;
-    private final DefaultTableModel tableModel;
+    private final BookTableModel tableModel;
     private final JLabel imageLabel;
-    private static final int BOOK_ID_OFFSET = 10000;
+    private final CoverImageCache coverCache = CoverImageCache.shared();
+    private static final int SEARCH_DEBOUNCE_MS = 250;
+    private CompletableFuture<Book> pendingDetails;
+    private final Path snapshotFile;
+    // Catalog version of the snapshot on disk, or -1 if there is none yet.
+    private long snapshotVersion = -1;
 
     public DashboardFrame(User user) {
         this.currentUser = user;
-        this.dbManager = new DatabaseManager();
+        this.dbManager = new AsyncDatabaseManager(new DatabaseManager());
+        this.snapshotFile = dbManager.getDatabaseManager().getCatalogSnapshotPath();
 
         setTitle("Digital Library Dashboard - Welcome, " + currentUser.getName());
         setSize(1000, 700);
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        // Closing hides the window at once; the process exits once the catalog snapshot is saved.
+        setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                dispose();
+                saveSnapshotIfChanged().whenComplete((ignored, error) -> System.exit(0));
+            }
+        });
         setLocationRelativeTo(null);
 
         JPanel mainPanel = new JPanel(new BorderLayout(10, 10));
         mainPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
 
-        String[] columnNames = {"S.No.", "Book ID", "Title", "Author", "Status (Borrowed By)"};
-        tableModel = new DefaultTableModel(columnNames, 0) {
-            @Override public boolean isCellEditable(int row, int column) { return false; }
-        };
+        tableModel = new BookTableModel(dbManager);
         bookTable = new JTable(tableModel);
         bookTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         bookTable.getSelectionModel().addListSelectionListener(e -> {
@@ -231,10 +825,50 @@ class DashboardFrame extends JFrame {
             }
         });
 
-        TableRowSorter<DefaultTableModel> sorter = new TableRowSorter<>(tableModel);
-        bookTable.setRowSorter(sorter);
+        bookTable.setRowSorter(new BookTableModel.SqlRowSorter(tableModel));
 
         JScrollPane tableScrollPane = new JScrollPane(bookTable);
+        new CoverPrefetcher(bookTable, tableModel, coverCache).attach(tableScrollPane.getViewport());
+
+        JPanel searchPanel = new JPanel(new BorderLayout(5, 0));
+        JTextField searchField = new JTextField();
+        searchPanel.add(new JLabel("Search title or author:"), BorderLayout.WEST);
+        searchPanel.add(searchField, BorderLayout.CENTER);
+        JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        JTextField authorPrefixField = new JTextField(15);
+        JCheckBox availableOnly = new JCheckBox("Available only");
+        JCheckBox borrowedByMe = new JCheckBox("Borrowed by me");
+        filterPanel.add(new JLabel("Author starts with:"));
+        filterPanel.add(authorPrefixField);
+        filterPanel.add(availableOnly);
+        filterPanel.add(borrowedByMe);
+        searchPanel.add(filterPanel, BorderLayout.SOUTH);
+        JPanel catalogPanel = new JPanel(new BorderLayout(0, 5));
+        catalogPanel.add(searchPanel, BorderLayout.NORTH);
+        catalogPanel.add(tableScrollPane, BorderLayout.CENTER);
+
+        // Query as you type, but only once typing pauses.
+        Timer searchDebounce = new Timer(SEARCH_DEBOUNCE_MS, e -> tableModel.setSearch(searchField.getText()));
+        searchDebounce.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) { searchDebounce.restart(); }
+            @Override public void removeUpdate(DocumentEvent e) { searchDebounce.restart(); }
+            @Override public void changedUpdate(DocumentEvent e) { searchDebounce.restart(); }
+        });
+
+        // Filters are applied in memory, so only the author prefix waits for typing to pause.
+        Runnable applyFilter = () -> tableModel.setFilter(new CatalogIndex.Filter(
+                authorPrefixField.getText().isBlank() ? null : authorPrefixField.getText().trim(),
+                availableOnly.isSelected(), borrowedByMe.isSelected() ? currentUser.getId() : 0));
+        Timer filterDebounce = new Timer(SEARCH_DEBOUNCE_MS, e -> applyFilter.run());
+        filterDebounce.setRepeats(false);
+        authorPrefixField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) { filterDebounce.restart(); }
+            @Override public void removeUpdate(DocumentEvent e) { filterDebounce.restart(); }
+            @Override public void changedUpdate(DocumentEvent e) { filterDebounce.restart(); }
+        });
+        availableOnly.addActionListener(e -> applyFilter.run());
+        borrowedByMe.addActionListener(e -> applyFilter.run());
 
         JPanel detailsPanel = new JPanel();
         detailsPanel.setLayout(new BoxLayout(detailsPanel, BoxLayout.Y_AXIS));
@@ -253,6 +887,10 @@ class DashboardFrame extends JFrame {
         buttonPanel.add(borrowButton);
         buttonPanel.add(returnButton);
         buttonPanel.add(deleteButton);
+        JButton myLoansButton = new JButton("My Loans");
+        JButton mostBorrowedButton = new JButton("Most Borrowed");
+        buttonPanel.add(myLoansButton);
+        buttonPanel.add(mostBorrowedButton);
 
         JPanel addPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         addPanel.setBorder(BorderFactory.createTitledBorder("Add New Book"));
@@ -267,8 +905,10 @@ class DashboardFrame extends JFrame {
         addPanel.add(new JLabel("Image URL:"));
         addPanel.add(imageField);
         addPanel.add(addButton);
+        JButton importButton = new JButton("Import Catalog...");
+        addPanel.add(importButton);
 
-        mainPanel.add(tableScrollPane, BorderLayout.CENTER);
+        mainPanel.add(catalogPanel, BorderLayout.CENTER);
         mainPanel.add(detailsPanel, BorderLayout.EAST);
         mainPanel.add(buttonPanel, BorderLayout.SOUTH);
         mainPanel.add(addPanel, BorderLayout.NORTH);
@@ -282,26 +922,53 @@ class DashboardFrame extends JFrame {
                 JOptionPane.showMessageDialog(this, "Title and Author cannot be empty.", "Input Error", JOptionPane.WARNING_MESSAGE);
                 return;
             }
-            dbManager.addBook(title, author, imageField.getText().trim());
-            refreshTable();
-            titleField.setText("");
-            authorField.setText("");
-            imageField.setText("");
+            dbManager.addBook(title, author, imageField.getText().trim()).thenRunAsync(() -> {
+                titleField.setText("");
+                authorField.setText("");
+                imageField.setText("");
+            }, AsyncDatabaseManager.EDT);
         });
 
+        importButton.addActionListener(e -> importCatalog(importButton));
         deleteButton.addActionListener(e -> deleteSelectedBook());
         borrowButton.addActionListener(e -> borrowSelectedBook());
         returnButton.addActionListener(e -> returnSelectedBook());
+        myLoansButton.addActionListener(e -> LoansDialog.showMyLoans(this, dbManager, currentUser));
+        mostBorrowedButton.addActionListener(e -> LoansDialog.showMostBorrowed(this, dbManager));
 
-        refreshTable();
+        // The first screen comes from the snapshot of the last session when there is one; the
+        // database is checked against it in the background.
+        CatalogSnapshot snapshot = CatalogSnapshot.open(snapshotFile);
+        if (snapshot != null) {
+            snapshotVersion = snapshot.version();
+            tableModel.reload(snapshot).thenAccept(current -> {
+                if (!current) saveSnapshotIfChanged();
+            });
+        } else {
+            tableModel.reload().thenRun(this::saveSnapshotIfChanged);
+        }
+    }
+
+    // Rewrites the snapshot file if the catalog has changed since it was written.
+    private CompletableFuture<Void> saveSnapshotIfChanged() {
+        long written = snapshotVersion;
+        return dbManager.getCatalogVersion()
+                .thenCompose(version -> version == written ? CompletableFuture.completedFuture(written) : dbManager.writeCatalogSnapshot(snapshotFile))
+                .handleAsync((version, error) -> {
+                    if (error != null) {
+                        System.err.println("Could not save the catalog snapshot: " + (error.getCause() != null ? error.getCause() : error));
+                    } else {
+                        snapshotVersion = version;
+                    }
+                    return null;
+                }, AsyncDatabaseManager.EDT);
     }
 
     private int getSelectedBookId() {
         int selectedRow = bookTable.getSelectedRow();
         if (selectedRow != -1) {
             int modelRow = bookTable.convertRowIndexToModel(selectedRow);
-            int displayedId = (int) tableModel.getValueAt(modelRow, 1);
-            return displayedId - BOOK_ID_OFFSET;
+            return tableModel.getBookIdAt(modelRow);
         }
         return -1;
     }
@@ -312,13 +979,13 @@ class DashboardFrame extends JFrame {
             JOptionPane.showMessageDialog(this, "Please select a book to borrow.", "Selection Error", JOptionPane.WARNING_MESSAGE);
             return;
         }
-        Book book = dbManager.getBookById(bookId);
-        if (book != null && !book.isAvailable()) {
-            JOptionPane.showMessageDialog(this, "This book is already borrowed.", "Action Error", JOptionPane.INFORMATION_MESSAGE);
-            return;
-        }
-        dbManager.updateBookBorrowStatus(bookId, currentUser.getId());
-        refreshTable();
+        dbManager.tryBorrow(bookId, currentUser.getId()).thenAcceptAsync(outcome -> {
+            if (outcome == LoanOutcome.ALREADY_BORROWED) {
+                JOptionPane.showMessageDialog(this, "This book is already borrowed.", "Action Error", JOptionPane.INFORMATION_MESSAGE);
+            } else if (outcome == LoanOutcome.NOT_FOUND) {
+                JOptionPane.showMessageDialog(this, "This book is no longer in the catalog.", "Action Error", JOptionPane.INFORMATION_MESSAGE);
+            }
+        }, AsyncDatabaseManager.EDT);
     }
 
     private void returnSelectedBook() {
@@ -327,13 +994,15 @@ class DashboardFrame extends JFrame {
             JOptionPane.showMessageDialog(this, "Please select a book to return.", "Selection Error", JOptionPane.WARNING_MESSAGE);
             return;
         }
-        Book book = dbManager.getBookById(bookId);
-        if (book != null && book.isAvailable()) {
-            JOptionPane.showMessageDialog(this, "This book is already in the library.", "Action Error", JOptionPane.INFORMATION_MESSAGE);
-            return;
-        }
-        dbManager.updateBookBorrowStatus(bookId, 0);
-        refreshTable();
+        dbManager.tryReturn(bookId, currentUser.getId()).thenAcceptAsync(outcome -> {
+            if (outcome == LoanOutcome.NOT_BORROWED) {
+                JOptionPane.showMessageDialog(this, "This book is already in the library.", "Action Error", JOptionPane.INFORMATION_MESSAGE);
+            } else if (outcome == LoanOutcome.BORROWED_BY_SOMEONE_ELSE) {
+                JOptionPane.showMessageDialog(this, "Only the user who borrowed this book can return it.", "Action Error", JOptionPane.INFORMATION_MESSAGE);
+            } else if (outcome == LoanOutcome.NOT_FOUND) {
+                JOptionPane.showMessageDialog(this, "This book is no longer in the catalog.", "Action Error", JOptionPane.INFORMATION_MESSAGE);
+            }
+        }, AsyncDatabaseManager.EDT);
     }
 
     private void deleteSelectedBook() {
@@ -345,11 +1014,65 @@ class DashboardFrame extends JFrame {
         int choice = JOptionPane.showConfirmDialog(this, "Are you sure you want to permanently delete this book?", "Confirm Deletion", JOptionPane.YES_NO_OPTION);
         if (choice == JOptionPane.YES_OPTION) {
             dbManager.deleteBook(bookId);
-            refreshTable();
         }
     }
 
+    private void importCatalog(JButton importButton) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new FileNameExtensionFilter("Catalog files (CSV, JSON Lines)", "csv", "jsonl", "ndjson"));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path file = chooser.getSelectedFile().toPath();
+        ProgressMonitor monitor = new ProgressMonitor(this, "Importing " + file.getFileName(), "Starting...", 0, 100);
+        monitor.setMillisToDecideToPopup(0);
+        monitor.setMillisToPopup(0);
+        // Set on the EDT when the user presses Cancel; the import stops after the chunk it is writing.
+        AtomicBoolean cancelled = new AtomicBoolean();
+        importButton.setEnabled(false);
+        dbManager.importBooks(file, new CatalogImporter.Listener() {
+            @Override
+            public void progress(CatalogImporter.Progress progress) {
+                SwingUtilities.invokeLater(() -> {
+                    if (monitor.isCanceled()) {
+                        cancelled.set(true);
+                        return;
+                    }
+                    monitor.setProgress(progress.percent());
+                    monitor.setNote(String.format("%,d books imported (%,.0f per second)", progress.inserted(), progress.rowsPerSecond()));
+                });
+            }
+
+            @Override
+            public boolean cancelled() {
+                return cancelled.get();
+            }
+        }).whenCompleteAsync((result, error) -> {
+            monitor.close();
+            importButton.setEnabled(true);
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                JOptionPane.showMessageDialog(this, "Import stopped: " + cause.getMessage()
+                        + "\nBooks imported so far are kept; import the same file again to resume.", "Import Error", JOptionPane.ERROR_MESSAGE);
+            } else if (!result.completed()) {
+                JOptionPane.showMessageDialog(this, String.format("Import paused after %,d books. Import the same file again to continue.", result.inserted()),
+                        "Import Paused", JOptionPane.INFORMATION_MESSAGE);
+            } else if (result.alreadyImported()) {
+                JOptionPane.showMessageDialog(this, file.getFileName() + " has already been imported.", "Import", JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                JOptionPane.showMessageDialog(this, String.format("Imported %,d books in %.1f s.%s", result.inserted(), result.elapsedNanos() / 1e9,
+                        result.rejected() > 0 ? String.format("%n%,d records without a title or author were skipped.", result.rejected()) : ""),
+                        "Import Complete", JOptionPane.INFORMATION_MESSAGE);
+            }
+        }, AsyncDatabaseManager.EDT);
+    }
+
     private void updateBookDetails() {
+        // A newer selection supersedes any lookup that has not produced a result yet.
+        if (pendingDetails != null) {
+            pendingDetails.cancel(false);
+            pendingDetails = null;
+        }
         int bookId = getSelectedBookId();
         if (bookId == -1) {
             imageLabel.setIcon(null);
@@ -357,60 +1080,51 @@ class DashboardFrame extends JFrame {
             return;
         }
 
-        Book selectedBook = dbManager.getBookById(bookId);
-
         imageLabel.setIcon(null);
         imageLabel.setText("Loading image...");
 
+        CompletableFuture<Book> lookup = dbManager.getBookById(bookId);
+        pendingDetails = lookup;
+        lookup.thenAcceptAsync(book -> {
+            if (pendingDetails == lookup) {
+                pendingDetails = null;
+                showCover(book);
+            }
+        }, AsyncDatabaseManager.EDT);
+    }
+
+    private void showCover(Book selectedBook) {
         if (selectedBook != null && selectedBook.getImagePath() != null && !selectedBook.getImagePath().isEmpty()) {
-            SwingWorker<ImageIcon, Void> worker = new SwingWorker<>() {
-                @Override
-                protected ImageIcon doInBackground() throws Exception {
-                    URL imageUrl = new URL(selectedBook.getImagePath());
-                    ImageIcon originalIcon = new ImageIcon(imageUrl);
-                    Image image = originalIcon.getImage().getScaledInstance(200, 300, Image.SCALE_SMOOTH);
-                    return new ImageIcon(image);
+            String imagePath = selectedBook.getImagePath();
+            BufferedImage cached = coverCache.getIfPresent(imagePath);
+            if (cached != null) {
+                imageLabel.setIcon(new ImageIcon(cached));
+                imageLabel.setText(null);
+                return;
+            }
+            // Runs on the cache's bounded loader pool; a prefetch already in flight for this URL is joined.
+            coverCache.load(imagePath).whenCompleteAsync((image, error) -> {
+                if (getSelectedBookId() != selectedBook.getId()) {
+                    return; // the selection moved on while this cover was loading
                 }
-
-                @Override
-                protected void done() {
-                    try {
-                        ImageIcon imageIcon = get();
-                        imageLabel.setIcon(imageIcon);
-                        imageLabel.setText(null);
-                    } catch (Exception e) {
-                        imageLabel.setIcon(null);
-                        imageLabel.setText("Image not found");
-                        System.err.println("Failed to load image: " + e.getMessage());
-                    }
+                if (error == null) {
+                    imageLabel.setIcon(new ImageIcon(image));
+                    imageLabel.setText(null);
+                } else {
+                    imageLabel.setIcon(null);
+                    imageLabel.setText("Image not found");
+                    System.err.println("Failed to load image: " + error.getMessage());
                 }
-            };
-            worker.execute();
+            }, AsyncDatabaseManager.EDT);
         } else {
             imageLabel.setIcon(null);
             imageLabel.setText("No Image Available");
         }
     }
-
-    private void refreshTable() {
-        tableModel.setRowCount(0);
-        List<Book> books = dbManager.getAllBooks();
-        int serialNumber = 1;
-        for (Book book : books) {
-            Object[] row = {
-                    serialNumber++,
-                    book.getId() + BOOK_ID_OFFSET,
-                    book.getTitle(),
-                    book.getAuthor(),
-                    dbManager.getBorrowerName(book.getBorrowedByUserId())
-            };
-            tableModel.addRow(row);
-        }
-    }
 }
 
 class LoginFrame extends JFrame {
-    private final DatabaseManager dbManager;
+    private final AsyncDatabaseManager dbManager;
     private final CardLayout cardLayout = new CardLayout();
     private final JPanel mainPanel = new JPanel(cardLayout);
 
@@ -420,10 +1134,12 @@ class LoginFrame extends JFrame {
     private final JTextField registerNameField = new JTextField(20);
     private final JTextField registerEmailField = new JTextField(20);
     private final JPasswordField registerPasswordField = new JPasswordField(20);
+    private final JButton loginButton;
+    private final JButton registerButton;
+    private final JLabel statusLabel = new JLabel("Opening the library database...", SwingConstants.CENTER);
 
     public LoginFrame() {
-        this.dbManager = new DatabaseManager();
-        dbManager.initializeDatabase();
+        this.dbManager = new AsyncDatabaseManager(new DatabaseManager());
 
         setTitle("Library Login");
         setSize(400, 300);
@@ -438,7 +1154,7 @@ class LoginFrame extends JFrame {
         loginPanel.add(loginPasswordField);
 
         JPanel loginButtonPanel = new JPanel();
-        JButton loginButton = new JButton("Login");
+        loginButton = new JButton("Login");
         JButton showRegisterButton = new JButton("Register");
         loginButtonPanel.add(loginButton);
         loginButtonPanel.add(showRegisterButton);
@@ -457,7 +1173,7 @@ class LoginFrame extends JFrame {
         registerPanel.add(registerPasswordField);
 
         JPanel registerButtonPanel = new JPanel();
-        JButton registerButton = new JButton("Create Account");
+        registerButton = new JButton("Create Account");
         JButton showLoginButton = new JButton("Back to Login");
         registerButtonPanel.add(registerButton);
         registerButtonPanel.add(showLoginButton);
@@ -469,12 +1185,26 @@ class LoginFrame extends JFrame {
         mainPanel.add(loginContainer, "LOGIN");
         mainPanel.add(registerContainer, "REGISTER");
         add(mainPanel);
+        statusLabel.setBorder(new EmptyBorder(0, 0, 10, 0));
+        add(statusLabel, BorderLayout.SOUTH);
 
         showRegisterButton.addActionListener(e -> cardLayout.show(mainPanel, "REGISTER"));
         showLoginButton.addActionListener(e -> cardLayout.show(mainPanel, "LOGIN"));
 
         loginButton.addActionListener(e -> handleLogin());
         registerButton.addActionListener(e -> handleRegister());
+
+        // Upgrading an old database, such as hashing every stored password, can take a while,
+        // so it runs in the background and the window waits with its buttons off.
+        setButtonsEnabled(false);
+        dbManager.initializeDatabase().whenCompleteAsync((ignored, error) -> {
+            remove(statusLabel);
+            revalidate();
+            setButtonsEnabled(true);
+            if (error != null) {
+                JOptionPane.showMessageDialog(this, "Could not open the database: " + rootCause(error).getMessage(), "Database Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }, AsyncDatabaseManager.EDT);
     }
 
     private void handleLogin() {
@@ -484,13 +1214,18 @@ class LoginFrame extends JFrame {
             JOptionPane.showMessageDialog(this, "Email and password cannot be empty.", "Login Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
-        User user = dbManager.loginUser(email, password);
-        if (user != null) {
-            this.dispose();
-            SwingUtilities.invokeLater(() -> new DashboardFrame(user).setVisible(true));
-        } else {
-            JOptionPane.showMessageDialog(this, "Invalid email or password.", "Login Failed", JOptionPane.ERROR_MESSAGE);
-        }
+        setButtonsEnabled(false);
+        dbManager.loginUser(email, password).whenCompleteAsync((user, error) -> {
+            setButtonsEnabled(true);
+            if (error != null) {
+                JOptionPane.showMessageDialog(this, "Could not log in: " + rootCause(error).getMessage(), "Login Failed", JOptionPane.ERROR_MESSAGE);
+            } else if (user != null) {
+                this.dispose();
+                new DashboardFrame(user).setVisible(true);
+            } else {
+                JOptionPane.showMessageDialog(this, "Invalid email or password.", "Login Failed", JOptionPane.ERROR_MESSAGE);
+            }
+        }, AsyncDatabaseManager.EDT);
     }
 
     private void handleRegister() {
@@ -501,22 +1236,46 @@ class LoginFrame extends JFrame {
             JOptionPane.showMessageDialog(this, "All fields are required.", "Registration Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
-        User newUser = dbManager.registerUser(name, email, password);
-        if (newUser != null) {
-            JOptionPane.showMessageDialog(this, "Registration successful! Please log in.", "Success", JOptionPane.INFORMATION_MESSAGE);
-            cardLayout.show(mainPanel, "LOGIN");
-        } else {
-            JOptionPane.showMessageDialog(this, "Registration failed. Email might already be in use.", "Registration Failed", JOptionPane.ERROR_MESSAGE);
-        }
+        setButtonsEnabled(false);
+        dbManager.registerUser(name, email, password).whenCompleteAsync((newUser, error) -> {
+            setButtonsEnabled(true);
+            if (error != null) {
+                JOptionPane.showMessageDialog(this, "Could not register: " + rootCause(error).getMessage(), "Registration Failed", JOptionPane.ERROR_MESSAGE);
+            } else if (newUser != null) {
+                JOptionPane.showMessageDialog(this, "Registration successful! Please log in.", "Success", JOptionPane.INFORMATION_MESSAGE);
+                cardLayout.show(mainPanel, "LOGIN");
+            } else {
+                JOptionPane.showMessageDialog(this, "Registration failed. Email might already be in use.", "Registration Failed", JOptionPane.ERROR_MESSAGE);
+            }
+        }, AsyncDatabaseManager.EDT);
+    }
+
+    // Prevents a second submit while the previous request is still running in the background.
+    private void setButtonsEnabled(boolean enabled) {
+        loginButton.setEnabled(enabled);
+        registerButton.setEnabled(enabled);
+    }
+
+    private static Throwable rootCause(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
     }
 }
 
 
 /**
- * The main entry point of the application.
+ * The main entry point of the application. With {@code --server [port]} it runs the headless
+ * HTTP API ({@link LibraryServer}) instead of the desktop client.
  */
 public class LibraryManager {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--server")) {
+            System.setProperty("java.awt.headless", "true");
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : LibraryServer.DEFAULT_PORT;
+            LibraryServer server = LibraryServer.start(port);
+            System.out.println("Library API listening on " + server.baseUri());
+            return;
+        }
+
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
         } catch (Exception e) {
@@ -526,4 +1285,3 @@ public class LibraryManager {
         SwingUtilities.invokeLater(() -> new LoginFrame().setVisible(true));
     }
 }
-
@@ -0,0 +1,373 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Headless HTTP API over {@link DatabaseManager}, so that many clients can share one database
+ * without each opening the file. Built on the JDK's HTTP server: every request runs on its own
+ * virtual thread and all of them share one connection pool. Responses are JSON.
+ * <pre>
+ * POST /api/login              {"email": ..., "password": ...} gives {"token": ..., "user": {...}}
+ * POST /api/logout             ends the caller's session
+ * GET  /api/books              ?limit=50&amp;sort=title|author|id|status&amp;order=asc|desc&amp;after={next}
+ * GET  /api/books/search       ?q=words&amp;offset=0&amp;limit=50, ranked by relevance
+ * GET  /api/books/{id}
+ * POST /api/books/{id}/borrow  409 if someone else has the book
+ * POST /api/books/{id}/return  409 if the book is not borrowed, 403 if someone else borrowed it
+ * </pre>
+ * A page of {@code /api/books} gives the {@code next} cursor to pass as {@code after} for the
+ * page that follows, read by keyset from the index; {@code offset} is only accepted without a
+ * cursor, to start further in. The search endpoint pages by {@code offset}. A failed database
+ * read answers 503 rather than an empty page or a 404.
+ * Logout, borrow and return need the {@code Authorization: Bearer <token>} header from login.
+ * Login answers 503 with {@code Retry-After} while too many password checks are already queued.
+ * The server only listens on loopback unless {@code -Dlibrary.server.host} names another
+ * address, such as {@code 0.0.0.0} for every interface; it speaks plain HTTP, tokens included.
+ */
+class LibraryServer implements AutoCloseable {
+    static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_PAGE = 50;
+    private static final int MAX_PAGE = 500;
+    private static final int MAX_BODY_BYTES = 16 * 1024;
+    private static final Duration SESSION_IDLE_TIMEOUT = Duration.ofHours(8);
+
+    static {
+        // The JDK server writes headers and body separately; with Nagle's algorithm on, every
+        // keep-alive response then waits out the client's delayed ACK (about 40 ms on Linux).
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final DatabaseManager db;
+    private final CatalogCache cache;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final SessionManager sessions = new SessionManager(SESSION_IDLE_TIMEOUT);
+
+    /** Listens on {@code port} of the loopback address only. */
+    LibraryServer(DatabaseManager db, int port) throws IOException {
+        this(db, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    LibraryServer(DatabaseManager db, InetSocketAddress address) throws IOException {
+        this.db = db;
+        this.cache = new CatalogCache(db);
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/api/", this::handle);
+    }
+
+    /**
+     * Starts the API on {@code port} (0 picks a free one) over the default library database, on
+     * loopback or the address in {@code -Dlibrary.server.host}.
+     */
+    static LibraryServer start(int port) throws IOException {
+        String host = System.getProperty("library.server.host");
+        InetSocketAddress address = host == null
+                ? new InetSocketAddress(InetAddress.getLoopbackAddress(), port)
+                : new InetSocketAddress(host, port);
+        DatabaseManager db = new DatabaseManager();
+        db.initializeDatabase();
+        LibraryServer server = new LibraryServer(db, address);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close, "library-server-shutdown"));
+        return server;
+    }
+
+    void start() {
+        server.start();
+    }
+
+    /** Where clients reach the API, such as {@code http://127.0.0.1:8080/api/}. */
+    URI baseUri() {
+        InetAddress address = server.getAddress().getAddress();
+        String host = address.isAnyLocalAddress() ? "localhost" : address.getHostAddress();
+        if (host.contains(":")) host = "[" + host + "]";
+        return URI.create("http://" + host + ":" + getPort() + "/api/");
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        Response response;
+        try {
+            response = route(exchange);
+        } catch (ApiException e) {
+            response = new Response(e.status, errorBody(e.getMessage()));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            response = new Response(503, errorBody("The database is unavailable"));
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            response = new Response(500, errorBody("Internal error"));
+        }
+        byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (response.status == 503) exchange.getResponseHeaders().set("Retry-After", "1");
+        exchange.sendResponseHeaders(response.status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+        exchange.close();
+    }
+
+    private Response route(HttpExchange exchange) throws IOException, SQLException {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().substring("/api/".length()).split("/");
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        switch (path[0]) {
+            case "login" -> {
+                requireMethod(method, "POST");
+                return login(exchange);
+            }
+            case "logout" -> {
+                requireMethod(method, "POST");
+                sessions.invalidate(bearerToken(exchange));
+                return new Response(200, "{}");
+            }
+            case "books" -> {
+                if (path.length == 1) {
+                    requireMethod(method, "GET");
+                    return listBooks(query);
+                }
+                if (path.length == 2 && path[1].equals("search")) {
+                    requireMethod(method, "GET");
+                    return searchBooks(query);
+                }
+                int bookId = parseInt(path[1], "book id");
+                if (path.length == 2) {
+                    requireMethod(method, "GET");
+                    return bookDetail(bookId);
+                }
+                if (path.length == 3 && (path[2].equals("borrow") || path[2].equals("return"))) {
+                    requireMethod(method, "POST");
+                    User user = authenticate(exchange);
+                    LoanOutcome outcome = path[2].equals("borrow") ? db.tryBorrow(bookId, user.getId()) : db.tryReturn(bookId, user.getId());
+                    return loanResponse(bookId, outcome);
+                }
+            }
+            default -> {
+            }
+        }
+        throw new ApiException(404, "No such endpoint");
+    }
+
+    private Response login(HttpExchange exchange) throws IOException {
+        Map<String, String> body;
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (bytes.length > MAX_BODY_BYTES) throw new ApiException(413, "Request body too large");
+            body = Json.parseObject(new String(bytes, StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, e.getMessage());
+        }
+        String email = body.get("email");
+        String password = body.get("password");
+        if (email == null || password == null) throw new ApiException(400, "email and password are required");
+        User user;
+        try {
+            user = db.loginUser(email, password);
+        } catch (RejectedExecutionException e) {
+            throw new ApiException(503, e.getMessage());
+        }
+        if (user == null) throw new ApiException(401, "Invalid email or password");
+        String token = sessions.create(user);
+
+        StringBuilder out = new StringBuilder("{\"token\":");
+        Json.appendString(out, token).append(",\"user\":{\"id\":").append(user.getId()).append(",\"name\":");
+        Json.appendString(out, user.getName()).append("}}");
+        return new Response(200, out.toString());
+    }
+
+    private User authenticate(HttpExchange exchange) {
+        User user = sessions.authenticate(bearerToken(exchange));
+        if (user == null) throw new ApiException(401, "Log in first");
+        return user;
+    }
+
+    private static String bearerToken(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.regionMatches(true, 0, "Bearer ", 0, 7)) return null;
+        return header.substring(7).trim();
+    }
+
+    private Response listBooks(Map<String, String> query) throws SQLException {
+        CatalogColumn column = switch (query.getOrDefault("sort", "title").toLowerCase(Locale.ROOT)) {
+            case "id" -> CatalogColumn.ID;
+            case "title" -> CatalogColumn.TITLE;
+            case "author" -> CatalogColumn.AUTHOR;
+            case "status" -> CatalogColumn.STATUS;
+            default -> throw new ApiException(400, "sort must be id, title, author or status");
+        };
+        CatalogSort sort = new CatalogSort(column, !query.getOrDefault("order", "asc").equalsIgnoreCase("desc"));
+        int limit = pageLimit(query);
+        String after = query.get("after");
+        List<CatalogRow> rows;
+        if (after != null) {
+            if (query.containsKey("offset")) throw new ApiException(400, "Use either after or offset");
+            rows = db.loadCatalogPage(sort, parseCursor(column, after), limit);
+        } else {
+            int offset = Math.max(0, parseInt(query.getOrDefault("offset", "0"), "offset"));
+            rows = offset == 0 ? db.loadCatalogPage(sort, null, limit) : db.loadCatalogPageAt(sort, offset, limit);
+        }
+        String next = rows.size() < limit ? null : cursor(column, rows.get(rows.size() - 1));
+        return new Response(200, page(db.loadBookCount(), -1, next, rows));
+    }
+
+    private Response searchBooks(Map<String, String> query) throws SQLException {
+        String q = query.get("q");
+        if (q == null || q.isBlank()) throw new ApiException(400, "q is required");
+        int offset = Math.max(0, parseInt(query.getOrDefault("offset", "0"), "offset"));
+        List<CatalogRow> rows = db.loadSearchResults(q, pageLimit(query), offset);
+        return new Response(200, page(db.loadSearchResultCount(q), offset, null, rows));
+    }
+
+    // The id of a page's last row and, unless sorting by id, its sort key, for the next page's after.
+    private static String cursor(CatalogColumn column, CatalogRow last) {
+        String position = column == CatalogColumn.ID ? String.valueOf(last.id()) : last.id() + ":" + column.keyOf(last);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // A row holding just what CatalogSort reads as the keyset position of a cursor.
+    private static CatalogRow parseCursor(CatalogColumn column, String cursor) {
+        String position;
+        try {
+            position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "after is not a cursor from this API");
+        }
+        int colon = position.indexOf(':');
+        if ((colon < 0) != (column == CatalogColumn.ID)) throw new ApiException(400, "after belongs to another sort");
+        int id = parseInt(colon < 0 ? position : position.substring(0, colon), "after");
+        String key = colon < 0 ? null : position.substring(colon + 1);
+        return switch (column) {
+            case ID -> new CatalogRow(id, null, null, null, 0, null);
+            case TITLE -> new CatalogRow(id, key, null, null, 0, null);
+            case AUTHOR -> new CatalogRow(id, null, key, null, 0, null);
+            case STATUS -> new CatalogRow(id, null, null, null, 0, key);
+        };
+    }
+
+    private Response bookDetail(int bookId) throws SQLException {
+        Book book = cache.getBookById(bookId);
+        if (book == null) throw new ApiException(404, "No book with id " + bookId);
+        StringBuilder out = new StringBuilder();
+        appendBook(out, book.getId(), book.getTitle(), book.getAuthor(), book.getImagePath(), book.isAvailable(),
+                cache.getBorrowerName(book.getBorrowedByUserId()));
+        return new Response(200, out.toString());
+    }
+
+    private Response loanResponse(int bookId, LoanOutcome outcome) {
+        if (outcome == null) throw new ApiException(500, "The change could not be saved");
+        int status = switch (outcome) {
+            case BORROWED, RETURNED -> 200;
+            case ALREADY_BORROWED, NOT_BORROWED -> 409;
+            case BORROWED_BY_SOMEONE_ELSE -> 403;
+            case NOT_FOUND -> 404;
+        };
+        return new Response(status, "{\"bookId\":" + bookId + ",\"outcome\":\"" + outcome + "\"}");
+    }
+
+    // offset is left out when negative, next when null.
+    private static String page(int total, int offset, String next, List<CatalogRow> rows) {
+        StringBuilder out = new StringBuilder(64 + rows.size() * 160);
+        out.append("{\"total\":").append(total);
+        if (offset >= 0) out.append(",\"offset\":").append(offset);
+        if (next != null) Json.appendString(out.append(",\"next\":"), next);
+        out.append(",\"books\":[");
+        for (int i = 0; i < rows.size(); i++) {
+            CatalogRow row = rows.get(i);
+            if (i > 0) out.append(',');
+            appendBook(out, row.id(), row.title(), row.author(), row.imagePath(), row.isAvailable(), row.status());
+        }
+        return out.append("]}").toString();
+    }
+
+    private static void appendBook(StringBuilder out, int id, String title, String author, String imagePath, boolean available, String status) {
+        out.append("{\"id\":").append(id).append(",\"title\":");
+        Json.appendString(out, title).append(",\"author\":");
+        Json.appendString(out, author).append(",\"imagePath\":");
+        Json.appendString(out, imagePath == null || imagePath.isEmpty() ? null : imagePath).append(",\"available\":").append(available).append(",\"status\":");
+        Json.appendString(out, status).append('}');
+    }
+
+    private static int pageLimit(Map<String, String> query) {
+        int limit = parseInt(query.getOrDefault("limit", String.valueOf(DEFAULT_PAGE)), "limit");
+        if (limit < 1 || limit > MAX_PAGE) throw new ApiException(400, "limit must be between 1 and " + MAX_PAGE);
+        return limit;
+    }
+
+    private static void requireMethod(String method, String expected) {
+        if (!method.equals(expected)) throw new ApiException(405, "Use " + expected);
+    }
+
+    private static int parseInt(String value, String name) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, name + " must be a number");
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) return query;
+        try {
+            for (String pair : rawQuery.split("&")) {
+                int eq = pair.indexOf('=');
+                String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+                String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+                query.putIfAbsent(key, value);
+            }
+        } catch (IllegalArgumentException e) {
+            // A '%' not followed by two hex digits.
+            throw new ApiException(400, "Malformed query string: " + e.getMessage());
+        }
+        return query;
+    }
+
+    private static String errorBody(String message) {
+        return Json.appendString(new StringBuilder("{\"error\":"), message).append('}').toString();
+    }
+
+    private record Response(int status, String body) {}
+
+    /** Ends request handling with an HTTP error status. */
+    private static final class ApiException extends RuntimeException {
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package org.example;
+
+/** What {@link DatabaseManager#tryBorrow} or {@link DatabaseManager#tryReturn} did. */
+enum LoanOutcome {
+    BORROWED,
+    RETURNED,
+    /** Someone else borrowed the book first. */
+    ALREADY_BORROWED,
+    /** The book was already back in the library. */
+    NOT_BORROWED,
+    /** Another user has the book, and only they can return it. */
+    BORROWED_BY_SOMEONE_ELSE,
+    /** No book has that id, for example because it was deleted. */
+    NOT_FOUND
+}
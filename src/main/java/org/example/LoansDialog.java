@@ -0,0 +1,86 @@
+package org.example;
+
+import javax.swing.BorderFactory;
+import javax.swing.JDialog;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JScrollPane;
+import javax.swing.JTabbedPane;
+import javax.swing.JTable;
+import javax.swing.table.DefaultTableModel;
+import java.awt.BorderLayout;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+
+/**
+ * Read-only windows over the loan history: "My Loans" for the logged-in user and the library's
+ * most borrowed books with daily loan volume. Both read the running totals and a bounded slice
+ * of the history, so opening them costs the same however long the history has grown.
+ */
+class LoansDialog extends JDialog {
+    private static final int HISTORY_LIMIT = 200;
+    private static final int MOST_BORROWED_LIMIT = 50;
+    private static final int VOLUME_DAYS = 30;
+    private static final DateTimeFormatter WHEN = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.MEDIUM).withZone(ZoneId.systemDefault());
+
+    private final JLabel summary = new JLabel("Loading...");
+
+    private LoansDialog(JFrame owner, String title) {
+        super(owner, title, false);
+        setSize(600, 450);
+        setLocationRelativeTo(owner);
+        summary.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        add(summary, BorderLayout.NORTH);
+    }
+
+    static void showMyLoans(JFrame owner, AsyncDatabaseManager db, User user) {
+        LoansDialog dialog = new LoansDialog(owner, "My Loans");
+        DefaultTableModel history = readOnlyModel("Book", "Event", "When");
+        dialog.add(new JScrollPane(new JTable(history)), BorderLayout.CENTER);
+        dialog.setVisible(true);
+
+        db.getActiveLoanCount(user.getId()).thenAcceptAsync(active ->
+                dialog.summary.setText(active == 1 ? "You have 1 book on loan." : "You have " + active + " books on loan."), AsyncDatabaseManager.EDT);
+        db.getLoanHistory(user.getId(), HISTORY_LIMIT).thenAcceptAsync(loans -> {
+            for (LoanEvent loan : loans) {
+                history.addRow(new Object[]{loan.title() != null ? loan.title() : "(deleted book " + loan.bookId() + ")",
+                        loan.returned() ? "Returned" : "Borrowed", WHEN.format(Instant.ofEpochMilli(loan.atMillis()))});
+            }
+        }, AsyncDatabaseManager.EDT);
+    }
+
+    static void showMostBorrowed(JFrame owner, AsyncDatabaseManager db) {
+        LoansDialog dialog = new LoansDialog(owner, "Most Borrowed");
+        DefaultTableModel popular = readOnlyModel("Rank", "Title", "Author", "Loans");
+        DefaultTableModel volume = readOnlyModel("Day", "Borrowed", "Returned");
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("Most borrowed", new JScrollPane(new JTable(popular)));
+        tabs.addTab("Daily volume", new JScrollPane(new JTable(volume)));
+        dialog.add(tabs, BorderLayout.CENTER);
+        dialog.setVisible(true);
+
+        db.getMostBorrowed(MOST_BORROWED_LIMIT).thenAcceptAsync(books -> {
+            dialog.summary.setText(books.isEmpty() ? "Nothing has been borrowed yet." : "The " + books.size() + " books borrowed most often.");
+            int rank = 1;
+            for (BookLoanCount book : books) {
+                popular.addRow(new Object[]{rank++, book.title(), book.author(), book.loans()});
+            }
+        }, AsyncDatabaseManager.EDT);
+        db.getDailyLoanVolume(VOLUME_DAYS).thenAcceptAsync(days -> {
+            for (DailyLoanVolume day : days) {
+                volume.addRow(new Object[]{day.day(), day.borrows(), day.returns()});
+            }
+        }, AsyncDatabaseManager.EDT);
+    }
+
+    private static DefaultTableModel readOnlyModel(String... columns) {
+        return new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+    }
+}
@@ -0,0 +1,424 @@
+package org.example;
+
+import org.sqlite.ProgressHandler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Background upkeep of the library database on one daemon thread: incremental vacuum hands
+ * pages freed by deletes back to the file system, {@code PRAGMA optimize} refreshes planner
+ * statistics that have gone stale, {@code PRAGMA integrity_check} looks for corruption, and
+ * {@code VACUUM INTO} writes a consistent, compacted backup to a timestamped file while the
+ * application keeps running. A task only starts once the pool has gone a whole idle window
+ * without a lease, and then gives way to foreground work: vacuum holds the writer for a few
+ * hundred pages at a time, and backups and integrity checks run on a connection of their own
+ * that pauses whenever the pool is busy. Each run is printed and stored in
+ * {@code maintenance_runs} with its duration and the bytes it reclaimed, which also tells the
+ * next process when each task is due. Only optimize and the integrity check run on their own
+ * unless configured otherwise: vacuum can rewrite the whole file, and backups write new files
+ * next to the database, so both are opt-in; see {@link Config#fromSystemProperties}.
+ */
+final class MaintenanceScheduler implements AutoCloseable {
+    enum Task { VACUUM, OPTIMIZE, INTEGRITY_CHECK, BACKUP }
+
+    /** A finished task. {@code bytesReclaimed} is how much smaller the database, or its backup, got. */
+    record Run(Task task, Duration duration, long bytesReclaimed, String detail) {
+        @Override
+        public String toString() {
+            return String.format("%s took %,d ms, reclaimed %,d bytes: %s",
+                    task.name().toLowerCase(Locale.ROOT), duration.toMillis(), bytesReclaimed, detail);
+        }
+    }
+
+    /**
+     * Which tasks run on their own, when, and where backups go; {@link #runNow} runs any task.
+     * Vacuum has no interval; it runs whenever enough pages are free. With {@code throttled} off,
+     * backups and integrity checks never pause.
+     */
+    record Config(Set<Task> tasks, Path backupDirectory, int backupsKept, Duration backupInterval, Duration integrityCheckInterval,
+                  Duration optimizeInterval, Duration idleWindow, boolean throttled) {
+        Config {
+            tasks = Set.copyOf(tasks);
+            if (backupsKept < 1) throw new IllegalArgumentException("backupsKept must be at least 1");
+            if (idleWindow.isNegative()) throw new IllegalArgumentException("idleWindow must not be negative");
+        }
+
+        /**
+         * Hourly optimize and a weekly integrity check. Daily backups, if enabled, go to a
+         * {@code backups} directory next to {@code database}, the last 7 kept.
+         */
+        static Config defaults(Path database) {
+            return new Config(EnumSet.of(Task.OPTIMIZE, Task.INTEGRITY_CHECK),
+                    database.toAbsolutePath().resolveSibling("backups"), 7, Duration.ofDays(1),
+                    Duration.ofDays(7), Duration.ofHours(1), Duration.ofSeconds(5), true);
+        }
+
+        /**
+         * The defaults, plus vacuum with {@code -Dlibrary.maintenance.vacuum=true} (the first run
+         * converts an older database to incremental auto-vacuum with one full VACUUM) and backups
+         * with {@code -Dlibrary.maintenance.backup=true}. Also reads
+         * {@code -Dlibrary.maintenance.backupDir}, {@code -Dlibrary.maintenance.backupsKept} and
+         * {@code -Dlibrary.maintenance.idleSeconds}. Returns null if
+         * {@code -Dlibrary.maintenance=false} switches maintenance off.
+         */
+        static Config fromSystemProperties(Path database) {
+            if (!Boolean.parseBoolean(System.getProperty("library.maintenance", "true"))) return null;
+            Config defaults = defaults(database);
+            Set<Task> tasks = EnumSet.copyOf(defaults.tasks);
+            if (Boolean.getBoolean("library.maintenance.vacuum")) tasks.add(Task.VACUUM);
+            if (Boolean.getBoolean("library.maintenance.backup")) tasks.add(Task.BACKUP);
+            String backupDirectory = System.getProperty("library.maintenance.backupDir");
+            return new Config(tasks, backupDirectory != null ? Path.of(backupDirectory) : defaults.backupDirectory,
+                    Integer.getInteger("library.maintenance.backupsKept", defaults.backupsKept),
+                    defaults.backupInterval, defaults.integrityCheckInterval, defaults.optimizeInterval,
+                    Duration.ofSeconds(Long.getLong("library.maintenance.idleSeconds", defaults.idleWindow.toSeconds())),
+                    true);
+        }
+    }
+
+    private static final long CHECK_INTERVAL_MS = 60_000;
+    private static final long IDLE_POLL_MS = 250;
+    // Below this many free pages a vacuum is not worth holding the writer for.
+    private static final int VACUUM_MIN_FREE_PAGES = 256;
+    private static final int VACUUM_PAGES_PER_STEP = 256;
+    // SQLite virtual machine instructions between two looks at the pool, and the pause while it is busy.
+    private static final int PROGRESS_INSTRUCTIONS = 10_000;
+    private static final long BUSY_PAUSE_MS = 5;
+    // Rows read by ANALYZE per index, so PRAGMA optimize stays quick on large tables.
+    private static final int ANALYSIS_LIMIT = 1_000;
+    private static final int INTEGRITY_ERRORS_SHOWN = 10;
+    private static final DateTimeFormatter BACKUP_STAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneId.systemDefault());
+
+    private final ConnectionPool pool;
+    private final Config config;
+    private final Path database;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "database-maintenance");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // When each task last finished, in epoch milliseconds; only touched on the maintenance thread.
+    private Map<Task, Long> lastFinished;
+    private volatile boolean closed;
+
+    MaintenanceScheduler(ConnectionPool pool, Config config) {
+        this.pool = pool;
+        this.config = config;
+        this.database = Path.of(pool.getUrl().substring("jdbc:sqlite:".length())).toAbsolutePath();
+    }
+
+    /** Looks for due tasks after the first idle window, then once a minute. */
+    void start() {
+        executor.scheduleWithFixedDelay(this::runDueTasks, config.idleWindow().toMillis(), CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /** Runs {@code task} on the maintenance thread without waiting for an idle window, and records it. */
+    CompletableFuture<Run> runNow(Task task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                Run run = run(task);
+                if (run != null) record(run);
+                return run;
+            } catch (SQLException | IOException e) {
+                throw new CompletionException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    private void runDueTasks() {
+        for (Task task : Task.values()) {
+            try {
+                if (lastFinished == null) lastFinished = loadHistory();
+                if (!config.tasks().contains(task) || !isDue(task)) continue;
+                if (!awaitIdle()) return;
+                Run run = run(task);
+                if (run != null) record(run);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (SQLException | IOException | RuntimeException e) {
+                if (closed) return;
+                pool.metrics().errorRecorded();
+                System.err.println("Database maintenance task " + task + " failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private boolean isDue(Task task) {
+        Duration interval = switch (task) {
+            case VACUUM -> Duration.ZERO;
+            case OPTIMIZE -> config.optimizeInterval();
+            case INTEGRITY_CHECK -> config.integrityCheckInterval();
+            case BACKUP -> config.backupInterval();
+        };
+        Long last = lastFinished.get(task);
+        return last == null || System.currentTimeMillis() - last >= interval.toMillis();
+    }
+
+    // Waits until no lease has been asked for during a whole idle window. Returns false once closed.
+    private boolean awaitIdle() throws InterruptedException {
+        long window = config.idleWindow().toNanos();
+        long seen = pool.leasesStarted();
+        long quietSince = System.nanoTime();
+        while (!closed) {
+            long started = pool.leasesStarted();
+            if (started != seen || pool.leasesOpen() > 0) {
+                seen = started;
+                quietSince = System.nanoTime();
+            } else if (System.nanoTime() - quietSince >= window) {
+                return true;
+            }
+            Thread.sleep(Math.min(IDLE_POLL_MS, Math.max(1, config.idleWindow().toMillis())));
+        }
+        return false;
+    }
+
+    private Run run(Task task) throws SQLException, IOException, InterruptedException {
+        return switch (task) {
+            case VACUUM -> vacuum();
+            case OPTIMIZE -> optimize();
+            case INTEGRITY_CHECK -> integrityCheck();
+            case BACKUP -> backup();
+        };
+    }
+
+    /**
+     * Frees pages a step at a time, sleeping between steps for as long as each one took while
+     * foreground work is waiting. A database created before incremental auto-vacuum existed is
+     * converted first with one full VACUUM, during which writes wait for the writer.
+     * Returns null if too few pages are free to bother.
+     */
+    private Run vacuum() throws SQLException, InterruptedException {
+        long start = System.nanoTime();
+        long pageSize;
+        long pagesBefore;
+        try (ConnectionPool.PooledConnection conn = pool.acquireWriter("maintenanceVacuum");
+             Statement stmt = conn.connection().createStatement()) {
+            if (pragma(stmt, "freelist_count") < VACUUM_MIN_FREE_PAGES) return null;
+            pageSize = pragma(stmt, "page_size");
+            pagesBefore = pragma(stmt, "page_count");
+            if (pragma(stmt, "auto_vacuum") != 2) {
+                stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                stmt.execute("VACUUM");
+                long reclaimed = (pagesBefore - pragma(stmt, "page_count")) * pageSize;
+                return new Run(Task.VACUUM, Duration.ofNanos(System.nanoTime() - start), reclaimed, "converted to incremental auto-vacuum");
+            }
+        }
+        long steps = 0;
+        long pagesAfter;
+        while (true) {
+            long leasesBefore = pool.leasesStarted();
+            long stepStart = System.nanoTime();
+            try (ConnectionPool.PooledConnection conn = pool.acquireWriter("maintenanceVacuum");
+                 Statement stmt = conn.connection().createStatement()) {
+                // executeUpdate steps the pragma to the end; each step frees one page.
+                stmt.executeUpdate("PRAGMA incremental_vacuum(" + VACUUM_PAGES_PER_STEP + ")");
+                steps++;
+                if (closed || pragma(stmt, "freelist_count") == 0) {
+                    pagesAfter = pragma(stmt, "page_count");
+                    break;
+                }
+            }
+            if (pool.leasesStarted() - leasesBefore > 1 || pool.leasesOpen() > 0) {
+                Thread.sleep(Math.max(BUSY_PAUSE_MS, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stepStart)));
+            }
+        }
+        return new Run(Task.VACUUM, Duration.ofNanos(System.nanoTime() - start), (pagesBefore - pagesAfter) * pageSize,
+                String.format("%,d pages in %,d steps", pagesBefore - pagesAfter, steps));
+    }
+
+    private Run optimize() throws SQLException {
+        long start = System.nanoTime();
+        try (ConnectionPool.PooledConnection conn = pool.acquireWriter("maintenanceOptimize");
+             Statement stmt = conn.connection().createStatement()) {
+            stmt.execute("PRAGMA analysis_limit = " + ANALYSIS_LIMIT);
+            // Plain optimize, as the bundled SQLite (3.45) has no 0x10000 "check every table" flag: it
+            // analyzes the tables this connection has used, and the pooled writer is the one that
+            // changed them, so those are the tables whose statistics can have gone stale.
+            stmt.execute("PRAGMA optimize");
+        }
+        return new Run(Task.OPTIMIZE, Duration.ofNanos(System.nanoTime() - start), 0, "statistics refreshed");
+    }
+
+    private Run integrityCheck() throws SQLException {
+        long start = System.nanoTime();
+        List<String> problems = new ArrayList<>();
+        try (Connection conn = openBackgroundConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA integrity_check(" + INTEGRITY_ERRORS_SHOWN + ")")) {
+            while (rs.next()) {
+                problems.add(rs.getString(1));
+            }
+        }
+        String detail = String.join("; ", problems);
+        if (!problems.equals(List.of("ok"))) {
+            pool.metrics().errorRecorded();
+            System.err.println("Integrity check of " + database + " found problems: " + detail);
+        }
+        return new Run(Task.INTEGRITY_CHECK, Duration.ofNanos(System.nanoTime() - start), 0, detail);
+    }
+
+    /**
+     * Writes a compacted copy of the database as it was when the backup started, then deletes
+     * all but the newest {@link Config#backupsKept} backups. The copy is written under a
+     * temporary name and renamed when complete, so every {@code .db} file in the backup
+     * directory is a whole backup.
+     */
+    private Run backup() throws SQLException, IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(config.backupDirectory());
+        String prefix = backupPrefix();
+        Path target = config.backupDirectory().resolve(prefix + BACKUP_STAMP.format(Instant.now()) + ".db");
+        Path partial = target.resolveSibling(target.getFileName() + ".partial");
+        long liveBytes;
+        try (Connection conn = openBackgroundConnection()) {
+            Files.deleteIfExists(partial);
+            try (Statement stmt = conn.createStatement()) {
+                liveBytes = pragma(stmt, "page_count") * pragma(stmt, "page_size");
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("VACUUM INTO ?")) {
+                pstmt.setString(1, partial.toString());
+                pstmt.executeUpdate();
+            }
+        } catch (SQLException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        long size = Files.size(target);
+        int deleted = deleteOldBackups(prefix);
+        return new Run(Task.BACKUP, Duration.ofNanos(System.nanoTime() - start), Math.max(0, liveBytes - size),
+                String.format("%s, %,d bytes, %d old backups deleted", target, size, deleted));
+    }
+
+    private String backupPrefix() {
+        String name = database.getFileName().toString();
+        return (name.endsWith(".db") ? name.substring(0, name.length() - 3) : name) + "-";
+    }
+
+    // Timestamps sort by name, so the newest backups come last.
+    private int deleteOldBackups(String prefix) throws IOException {
+        List<Path> backups;
+        try (Stream<Path> files = Files.list(config.backupDirectory())) {
+            backups = files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(prefix) && name.endsWith(".db");
+            }).sorted(Comparator.comparing(file -> file.getFileName().toString())).toList();
+        }
+        int deleted = 0;
+        for (int i = 0; i < backups.size() - config.backupsKept(); i++) {
+            Files.deleteIfExists(backups.get(i));
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * A connection outside the pool for long reads, so they do not take a reader from the
+     * application. Every few thousand instructions it checks whether foreground work started
+     * since the last look and if so sleeps briefly; closing the scheduler interrupts it.
+     */
+    private Connection openBackgroundConnection() throws SQLException {
+        Connection conn = DriverManager.getConnection(pool.getUrl());
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = 5000");
+        }
+        ProgressHandler.setHandler(conn, PROGRESS_INSTRUCTIONS, new ProgressHandler() {
+            private long seen = pool.leasesStarted();
+
+            @Override
+            protected int progress() {
+                if (closed) return 1;
+                if (!config.throttled()) return 0;
+                long started = pool.leasesStarted();
+                if (started != seen || pool.leasesOpen() > 0) {
+                    seen = started;
+                    try {
+                        Thread.sleep(BUSY_PAUSE_MS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return 1;
+                    }
+                }
+                return 0;
+            }
+        });
+        return conn;
+    }
+
+    private Map<Task, Long> loadHistory() throws SQLException {
+        Map<Task, Long> history = new EnumMap<>(Task.class);
+        try (ConnectionPool.PooledConnection conn = pool.acquireReader("maintenanceHistory");
+             ResultSet rs = conn.prepare("SELECT task, finished_at FROM maintenance_runs").executeQuery()) {
+            while (rs.next()) {
+                for (Task task : Task.values()) {
+                    if (task.name().equals(rs.getString(1))) history.put(task, rs.getLong(2));
+                }
+            }
+        }
+        return history;
+    }
+
+    private void record(Run run) throws SQLException {
+        long finishedAt = System.currentTimeMillis();
+        try (ConnectionPool.PooledConnection conn = pool.acquireWriter("maintenanceRecord")) {
+            PreparedStatement pstmt = conn.prepare("INSERT OR REPLACE INTO maintenance_runs(task, finished_at, duration_ms, bytes_reclaimed, detail) VALUES (?, ?, ?, ?, ?)");
+            pstmt.setString(1, run.task().name());
+            pstmt.setLong(2, finishedAt);
+            pstmt.setLong(3, run.duration().toMillis());
+            pstmt.setLong(4, run.bytesReclaimed());
+            pstmt.setString(5, run.detail());
+            pstmt.executeUpdate();
+        }
+        if (lastFinished != null) lastFinished.put(run.task(), finishedAt);
+        System.out.println("Database maintenance: " + run);
+    }
+
+    private static long pragma(Statement stmt, String name) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA " + name)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /** Stops scheduling, interrupts a running backup or integrity check, and waits briefly for the task to end. */
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package org.example;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Salted PBKDF2-HMAC-SHA256 password hashes, stored as
+ * {@code pbkdf2-sha256$<iterations>$<salt>$<hash>} with base64 salt and hash. Each hash is
+ * deliberately slow (about 200 ms at the default cost), so all of them run on a small
+ * dedicated pool with a bounded queue: a burst of logins queues up there, or is turned away
+ * with a {@link RejectedExecutionException} once the queue is full, instead of taking every
+ * thread the database and UI need. The cost is set with {@code -Dlibrary.password.iterations}.
+ */
+final class PasswordHasher implements AutoCloseable {
+    // OWASP's 2023 recommendation for PBKDF2-HMAC-SHA256.
+    static final int DEFAULT_ITERATIONS = 600_000;
+    private static final String PREFIX = "pbkdf2-sha256$";
+    private static final Pattern FORMAT = Pattern.compile("pbkdf2-sha256\\$(\\d{1,9})\\$([A-Za-z0-9+/]+)\\$([A-Za-z0-9+/]+)");
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final int QUEUED_PER_THREAD = 32;
+
+    private static volatile PasswordHasher shared;
+
+    private final int iterations;
+    private final ThreadPoolExecutor executor;
+    private final SecureRandom random = new SecureRandom();
+    // Random salt and hash checked against when there is no stored hash, so an unknown email
+    // takes as long to reject as a wrong password.
+    private final String decoy;
+
+    PasswordHasher(int iterations, int threads) {
+        if (iterations < 1) throw new IllegalArgumentException("iterations must be at least 1");
+        this.iterations = iterations;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * QUEUED_PER_THREAD), r -> {
+                    Thread thread = new Thread(r, "password-hasher-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        byte[] decoyHash = new byte[HASH_BITS / 8];
+        random.nextBytes(decoyHash);
+        this.decoy = PREFIX + iterations + "$" + base64.encodeToString(newSalt()) + "$" + base64.encodeToString(decoyHash);
+    }
+
+    /** The process-wide hasher: {@code -Dlibrary.password.iterations}, one thread per two cores. */
+    static PasswordHasher shared() {
+        PasswordHasher hasher = shared;
+        if (hasher == null) {
+            synchronized (PasswordHasher.class) {
+                hasher = shared;
+                if (hasher == null) {
+                    int iterations = Integer.getInteger("library.password.iterations", DEFAULT_ITERATIONS);
+                    shared = hasher = new PasswordHasher(iterations, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+                }
+            }
+        }
+        return hasher;
+    }
+
+    int getIterations() { return iterations; }
+
+    /** Hashes {@code password} with a fresh salt on the hashing pool. */
+    CompletableFuture<String> hashAsync(String password) {
+        return supply(() -> encode(password.toCharArray(), newSalt(), iterations));
+    }
+
+    /** Like {@link #hashAsync}, waiting for the result. */
+    String hash(String password) {
+        return join(hashAsync(password));
+    }
+
+    /**
+     * Hashes every password in parallel on the hashing pool and waits for all of them. At most
+     * two per thread are queued at a time, so a long list never fills the queue logins use.
+     */
+    List<String> hashAll(List<String> passwords) {
+        Semaphore queued = new Semaphore(executor.getMaximumPoolSize() * 2);
+        List<CompletableFuture<String>> hashes = new ArrayList<>(passwords.size());
+        for (String password : passwords) {
+            queued.acquireUninterruptibly();
+            CompletableFuture<String> hash = hashAsync(password);
+            hash.whenComplete((h, e) -> queued.release());
+            hashes.add(hash);
+        }
+        return hashes.stream().map(PasswordHasher::join).toList();
+    }
+
+    /**
+     * Checks {@code password} against a stored hash on the hashing pool. A null or malformed
+     * {@code storedHash} never matches, but takes as long to reject as a wrong password.
+     */
+    CompletableFuture<Boolean> verifyAsync(String password, String storedHash) {
+        Matcher stored = parse(storedHash);
+        boolean known = stored != null;
+        Matcher expected = known ? stored : parse(decoy);
+        return supply(() -> {
+            byte[] salt = Base64.getDecoder().decode(expected.group(2));
+            byte[] hash = Base64.getDecoder().decode(expected.group(3));
+            byte[] actual = derive(password.toCharArray(), salt, Integer.parseInt(expected.group(1)), hash.length * 8);
+            return MessageDigest.isEqual(hash, actual) && known;
+        });
+    }
+
+    boolean verify(String password, String storedHash) {
+        return join(verifyAsync(password, storedHash));
+    }
+
+    /** Whether {@code storedHash} is not a hash, or was made with fewer iterations than this hasher uses now. */
+    boolean needsRehash(String storedHash) {
+        Matcher stored = parse(storedHash);
+        return stored == null || Integer.parseInt(stored.group(1)) < iterations;
+    }
+
+    static boolean isHash(String storedHash) {
+        return parse(storedHash) != null;
+    }
+
+    private static Matcher parse(String storedHash) {
+        if (storedHash == null) return null;
+        Matcher matcher = FORMAT.matcher(storedHash);
+        return matcher.matches() ? matcher : null;
+    }
+
+    private <T> CompletableFuture<T> supply(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Too many logins in progress, try again shortly", e));
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) throw runtime;
+            throw e;
+        }
+    }
+
+    private byte[] newSalt() {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        return salt;
+    }
+
+    private static String encode(char[] password, byte[] salt, int iterations) {
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + "$" + base64.encodeToString(salt) + "$" + base64.encodeToString(derive(password, salt, iterations, HASH_BITS));
+    }
+
+    private static byte[] derive(char[] password, byte[] salt, int iterations, int bits) {
+        PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, bits);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
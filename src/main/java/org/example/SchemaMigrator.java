@@ -0,0 +1,250 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Brings the library database up to the current schema. Migrations are numbered and applied
+ * in order, each in its own transaction, and {@code PRAGMA user_version} records the last one
+ * applied. To change the schema, append a migration; never edit one that has shipped.
+ */
+class SchemaMigrator {
+    /**
+     * Work a migration does in Java. {@code prepare} runs before the migration's transaction
+     * opens, so anything slow there does not hold the write lock; the {@link Apply} it returns
+     * runs inside the transaction, after the statements.
+     */
+    @FunctionalInterface
+    interface Step {
+        Apply prepare(Connection conn) throws SQLException;
+    }
+
+    @FunctionalInterface
+    interface Apply {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    record Migration(int version, String description, List<String> statements, Step step) {
+        Migration(int version, String description, List<String> statements) {
+            this(version, description, statements, null);
+        }
+    }
+
+    private static final String CREATE_TITLE_INDEX = "CREATE INDEX IF NOT EXISTS idx_books_title ON books(title, id)";
+    private static final String CREATE_AUTHOR_INDEX = "CREATE INDEX IF NOT EXISTS idx_books_author ON books(author, id)";
+    private static final List<String> CREATE_SEARCH_TRIGGERS = List.of(
+            "CREATE TRIGGER IF NOT EXISTS books_fts_insert AFTER INSERT ON books BEGIN "
+                    + "INSERT INTO books_fts(rowid, title, author) VALUES (new.id, new.title, new.author); END",
+            "CREATE TRIGGER IF NOT EXISTS books_fts_delete AFTER DELETE ON books BEGIN "
+                    + "INSERT INTO books_fts(books_fts, rowid, title, author) VALUES ('delete', old.id, old.title, old.author); END",
+            "CREATE TRIGGER IF NOT EXISTS books_fts_update AFTER UPDATE OF title, author ON books BEGIN "
+                    + "INSERT INTO books_fts(books_fts, rowid, title, author) VALUES ('delete', old.id, old.title, old.author); "
+                    + "INSERT INTO books_fts(rowid, title, author) VALUES (new.id, new.title, new.author); END");
+
+    // Unix time in milliseconds; 'now' is fixed for the duration of one statement.
+    private static final String NOW_MILLIS = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+    private static final String LOG_BORROW = "INSERT INTO loans(book_id, user_id, returned, at) SELECT new.id, new.borrowed_by_user_id, 0, "
+            + NOW_MILLIS + " WHERE new.borrowed_by_user_id IS NOT NULL; ";
+    private static final String LOG_RETURN = "INSERT INTO loans(book_id, user_id, returned, at) SELECT old.id, old.borrowed_by_user_id, 1, "
+            + NOW_MILLIS + " WHERE old.borrowed_by_user_id IS NOT NULL; ";
+
+    private static final String BUMP_CATALOG_VERSION = "UPDATE catalog_version SET version = version + 1 WHERE id = 1; ";
+
+    static final List<Migration> MIGRATIONS = List.of(
+            // Databases created before migrations existed already have these tables at user_version 0.
+            new Migration(1, "users and books tables", List.of(
+                    "CREATE TABLE IF NOT EXISTS users (id INTEGER PRIMARY KEY, name TEXT NOT NULL, email TEXT NOT NULL UNIQUE, password TEXT NOT NULL)",
+                    "CREATE TABLE IF NOT EXISTS books (id INTEGER PRIMARY KEY, title TEXT NOT NULL, author TEXT NOT NULL, image_path TEXT, borrowed_by_user_id INTEGER DEFAULT 0)",
+                    CREATE_TITLE_INDEX,
+                    CREATE_AUTHOR_INDEX)),
+            new Migration(2, "full-text search over title and author", concat(List.of(
+                    "CREATE VIRTUAL TABLE IF NOT EXISTS books_fts USING fts5(title, author, content='books', content_rowid='id', tokenize='unicode61 remove_diacritics 2', prefix='2 3')"),
+                    CREATE_SEARCH_TRIGGERS,
+                    List.of("INSERT INTO books_fts(books_fts) VALUES ('rebuild')"))),
+            // SQLite cannot add a foreign key to an existing table, so books is rebuilt. "Not borrowed"
+            // becomes NULL instead of 0, and ids of users that no longer exist are cleared.
+            new Migration(3, "borrower foreign key and index", concat(List.of(
+                    "CREATE TABLE books_new (id INTEGER PRIMARY KEY, title TEXT NOT NULL, author TEXT NOT NULL, image_path TEXT, "
+                            + "borrowed_by_user_id INTEGER REFERENCES users(id) ON DELETE SET NULL)",
+                    "INSERT INTO books_new (id, title, author, image_path, borrowed_by_user_id) "
+                            + "SELECT b.id, b.title, b.author, b.image_path, u.id FROM books b LEFT JOIN users u ON u.id = b.borrowed_by_user_id",
+                    "DROP TABLE books",
+                    "ALTER TABLE books_new RENAME TO books",
+                    CREATE_TITLE_INDEX,
+                    CREATE_AUTHOR_INDEX,
+                    "CREATE INDEX idx_books_borrower ON books(borrowed_by_user_id)"),
+                    CREATE_SEARCH_TRIGGERS)),
+            // One row per imported file; records is committed together with the rows it counts. A
+            // 64 MB FTS hash lets a bulk import flush one large segment per chunk instead of many.
+            new Migration(4, "bulk import checkpoints", List.of(
+                    "CREATE TABLE imports (source TEXT PRIMARY KEY, fingerprint TEXT NOT NULL, records INTEGER NOT NULL, "
+                            + "inserted INTEGER NOT NULL, completed INTEGER NOT NULL DEFAULT 0)",
+                    "INSERT INTO books_fts(books_fts, rank) VALUES ('hashsize', 67108864)")),
+            // Passwords used to be stored as typed. Each one is hashed at the current cost, which
+            // takes a fraction of a second per user, in parallel on the PasswordHasher pool before
+            // the transaction opens; the transaction only writes the hashes.
+            new Migration(5, "hash stored passwords", List.of(), SchemaMigrator::hashPlaintextPasswords),
+            // Every change of books.borrowed_by_user_id, whichever method makes it, appends to loans
+            // through triggers, and triggers on loans keep the per-book, per-user and per-day totals,
+            // so reading them never scans the history. Books on loan at upgrade time count as one
+            // borrow each, dated to the upgrade.
+            new Migration(6, "loan history and loan totals", List.of(
+                    "CREATE TABLE loans (id INTEGER PRIMARY KEY, book_id INTEGER NOT NULL, user_id INTEGER NOT NULL, "
+                            + "returned INTEGER NOT NULL, at INTEGER NOT NULL)",
+                    "CREATE INDEX idx_loans_user ON loans(user_id, id)",
+                    "CREATE TABLE book_loan_counts (book_id INTEGER PRIMARY KEY, loans INTEGER NOT NULL)",
+                    "CREATE INDEX idx_book_loan_counts_loans ON book_loan_counts(loans DESC, book_id)",
+                    "CREATE TABLE user_loan_counts (user_id INTEGER PRIMARY KEY, active INTEGER NOT NULL, total INTEGER NOT NULL)",
+                    "CREATE TABLE daily_loans (day TEXT PRIMARY KEY, borrows INTEGER NOT NULL, returns INTEGER NOT NULL)",
+                    "CREATE TRIGGER loans_count_borrow AFTER INSERT ON loans WHEN NOT new.returned BEGIN "
+                            + "INSERT INTO book_loan_counts(book_id, loans) VALUES (new.book_id, 1) "
+                            + "ON CONFLICT(book_id) DO UPDATE SET loans = loans + 1; "
+                            + "INSERT INTO user_loan_counts(user_id, active, total) VALUES (new.user_id, 1, 1) "
+                            + "ON CONFLICT(user_id) DO UPDATE SET active = active + 1, total = total + 1; "
+                            + "INSERT INTO daily_loans(day, borrows, returns) VALUES (date(new.at / 1000, 'unixepoch'), 1, 0) "
+                            + "ON CONFLICT(day) DO UPDATE SET borrows = borrows + 1; END",
+                    "CREATE TRIGGER loans_count_return AFTER INSERT ON loans WHEN new.returned BEGIN "
+                            + "UPDATE user_loan_counts SET active = active - 1 WHERE user_id = new.user_id; "
+                            + "INSERT INTO daily_loans(day, borrows, returns) VALUES (date(new.at / 1000, 'unixepoch'), 0, 1) "
+                            + "ON CONFLICT(day) DO UPDATE SET returns = returns + 1; END",
+                    "INSERT INTO loans(book_id, user_id, returned, at) SELECT id, borrowed_by_user_id, 0, " + NOW_MILLIS
+                            + " FROM books WHERE borrowed_by_user_id IS NOT NULL ORDER BY id",
+                    "CREATE TRIGGER books_loan_insert AFTER INSERT ON books WHEN new.borrowed_by_user_id IS NOT NULL BEGIN "
+                            + LOG_BORROW + "END",
+                    "CREATE TRIGGER books_loan_update AFTER UPDATE OF borrowed_by_user_id ON books "
+                            + "WHEN old.borrowed_by_user_id IS NOT new.borrowed_by_user_id BEGIN " + LOG_RETURN + LOG_BORROW + "END",
+                    // A deleted book is returned first, so its borrower's active count stays right.
+                    "CREATE TRIGGER books_loan_delete AFTER DELETE ON books BEGIN " + LOG_RETURN
+                            + "DELETE FROM book_loan_counts WHERE book_id = old.id; END")),
+            // A counter bumped by every change that shows in the catalog, so a copy of the catalog
+            // made elsewhere, such as a CatalogSnapshot, can tell whether it is still current.
+            new Migration(7, "catalog change counter", List.of(
+                    "CREATE TABLE catalog_version (id INTEGER PRIMARY KEY CHECK (id = 1), version INTEGER NOT NULL)",
+                    "INSERT INTO catalog_version(id, version) VALUES (1, 1)",
+                    "CREATE TRIGGER catalog_version_insert AFTER INSERT ON books BEGIN " + BUMP_CATALOG_VERSION + "END",
+                    "CREATE TRIGGER catalog_version_delete AFTER DELETE ON books BEGIN " + BUMP_CATALOG_VERSION + "END",
+                    "CREATE TRIGGER catalog_version_update AFTER UPDATE OF title, author, image_path, borrowed_by_user_id ON books BEGIN "
+                            + BUMP_CATALOG_VERSION + "END",
+                    // The catalog shows borrower names.
+                    "CREATE TRIGGER catalog_version_user AFTER UPDATE OF name ON users BEGIN " + BUMP_CATALOG_VERSION + "END")),
+            // The last run of each MaintenanceScheduler task, which also tells a new process when
+            // each one is next due.
+            new Migration(8, "maintenance history", List.of(
+                    "CREATE TABLE maintenance_runs (task TEXT PRIMARY KEY, finished_at INTEGER NOT NULL, "
+                            + "duration_ms INTEGER NOT NULL, bytes_reclaimed INTEGER NOT NULL, detail TEXT)")));
+
+    static final int LATEST_VERSION = MIGRATIONS.get(MIGRATIONS.size() - 1).version();
+
+    /** Applies every pending migration. Returns the schema version the database ends up at. */
+    int migrate(Connection conn) throws SQLException {
+        return migrate(conn, LATEST_VERSION);
+    }
+
+    /** Applies pending migrations up to and including {@code targetVersion}. */
+    int migrate(Connection conn, int targetVersion) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            // Only takes effect before the first table is created; MaintenanceScheduler converts older files.
+            if (pageCount(stmt) == 0) {
+                stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+            }
+            // WAL is a property of the database file, so it only needs to be set once, outside a transaction.
+            stmt.execute("PRAGMA journal_mode = WAL");
+            // Table rebuilds would otherwise trip foreign keys half way through; checked explicitly below.
+            stmt.execute("PRAGMA foreign_keys = OFF");
+        }
+        int version = currentVersion(conn);
+        boolean autoCommit = conn.getAutoCommit();
+        try {
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version() <= version || migration.version() > targetVersion) continue;
+                Apply apply;
+                try {
+                    apply = migration.step() == null ? null : migration.step().prepare(conn);
+                } catch (SQLException e) {
+                    throw new SQLException("Schema migration " + migration.version() + " (" + migration.description() + ") failed: " + e.getMessage(), e);
+                }
+                conn.setAutoCommit(false);
+                try (Statement stmt = conn.createStatement()) {
+                    for (String sql : migration.statements()) {
+                        stmt.execute(sql);
+                    }
+                    if (apply != null) {
+                        apply.apply(conn);
+                    }
+                    checkForeignKeys(stmt, migration);
+                    stmt.execute("PRAGMA user_version = " + migration.version());
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw new SQLException("Schema migration " + migration.version() + " (" + migration.description() + ") failed: " + e.getMessage(), e);
+                }
+                version = migration.version();
+                System.out.println("Applied schema migration " + version + ": " + migration.description());
+            }
+        } finally {
+            conn.setAutoCommit(autoCommit);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA foreign_keys = ON");
+            }
+        }
+        return version;
+    }
+
+    static int currentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static long pageCount(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA page_count")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static Apply hashPlaintextPasswords(Connection conn) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        List<String> passwords = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, password FROM users")) {
+            while (rs.next()) {
+                if (PasswordHasher.isHash(rs.getString(2))) continue;
+                ids.add(rs.getInt(1));
+                passwords.add(rs.getString(2));
+            }
+        }
+        List<String> hashes = PasswordHasher.shared().hashAll(passwords);
+        return writer -> {
+            // A password changed since it was read keeps its new value.
+            try (PreparedStatement pstmt = writer.prepareStatement("UPDATE users SET password = ? WHERE id = ? AND password = ?")) {
+                for (int i = 0; i < ids.size(); i++) {
+                    pstmt.setString(1, hashes.get(i));
+                    pstmt.setInt(2, ids.get(i));
+                    pstmt.setString(3, passwords.get(i));
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+        };
+    }
+
+    private static void checkForeignKeys(Statement stmt, Migration migration) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA foreign_key_check")) {
+            if (rs.next()) {
+                throw new SQLException("Migration " + migration.version() + " left a dangling reference in table " + rs.getString(1));
+            }
+        }
+    }
+
+    @SafeVarargs
+    private static List<String> concat(List<String>... parts) {
+        return Arrays.stream(parts).flatMap(List::stream).toList();
+    }
+}
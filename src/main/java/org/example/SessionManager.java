@@ -0,0 +1,88 @@
+package org.example;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory login sessions keyed by random bearer tokens. Checking a token is a map lookup, so
+ * only logging in pays for the {@link PasswordHasher}; a session expires after it has not been
+ * used for the idle timeout. Sessions live as long as the process, so a restart logs everyone out.
+ */
+class SessionManager {
+    private static final int TOKEN_BYTES = 32;
+    private static final Duration PURGE_INTERVAL = Duration.ofMinutes(1);
+
+    private final long idleTimeoutNanos;
+    private final long purgeIntervalNanos;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final AtomicLong nextPurge;
+
+    SessionManager(Duration idleTimeout) {
+        this(idleTimeout, PURGE_INTERVAL);
+    }
+
+    SessionManager(Duration idleTimeout, Duration purgeInterval) {
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.purgeIntervalNanos = purgeInterval.toNanos();
+        this.nextPurge = new AtomicLong(System.nanoTime() + purgeIntervalNanos);
+    }
+
+    /** Starts a session for {@code user} and returns its token. */
+    String create(User user) {
+        long now = System.nanoTime();
+        purgeExpired(now);
+        byte[] tokenBytes = new byte[TOKEN_BYTES];
+        random.nextBytes(tokenBytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(tokenBytes);
+        sessions.put(token, new Session(user, now + idleTimeoutNanos));
+        return token;
+    }
+
+    /** The user of the session {@code token} belongs to, or null if there is none or it has expired. */
+    User authenticate(String token) {
+        if (token == null) return null;
+        Session session = sessions.get(token);
+        if (session == null) return null;
+        long now = System.nanoTime();
+        if (session.expired(now)) {
+            sessions.remove(token, session);
+            return null;
+        }
+        session.expiresAtNanos = now + idleTimeoutNanos;
+        return session.user;
+    }
+
+    void invalidate(String token) {
+        if (token != null) sessions.remove(token);
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    // Sessions nobody comes back for are only found by scanning, which is done at most once a purge interval.
+    private void purgeExpired(long now) {
+        long due = nextPurge.get();
+        if (now - due < 0 || !nextPurge.compareAndSet(due, now + purgeIntervalNanos)) return;
+        sessions.values().removeIf(session -> session.expired(now));
+    }
+
+    private static final class Session {
+        final User user;
+        volatile long expiresAtNanos;
+
+        Session(User user, long expiresAtNanos) {
+            this.user = user;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        boolean expired(long now) {
+            return now - expiresAtNanos > 0;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CatalogCacheTest {
+    @TempDir
+    Path temp;
+    private ConnectionPool pool;
+    private DatabaseManager db;
+    private User user;
+
+    @BeforeEach
+    void open() {
+        pool = new ConnectionPool("jdbc:sqlite:" + temp.resolve("library.db"), 2);
+        db = new DatabaseManager(pool);
+        db.initializeDatabase();
+        user = db.registerUser("Ada", "ada@example.org", "secret");
+        db.addBook("Dune", "Herbert", null);
+    }
+
+    @AfterEach
+    void close() {
+        pool.close();
+    }
+
+    @Test
+    void borrowsReturnsAndDeletesInvalidateCachedBooks() throws SQLException {
+        CatalogCache cache = new CatalogCache(db);
+        Book cached = cache.getBookById(1);
+        assertSame(cached, cache.getBookById(1));
+
+        db.tryBorrow(1, user.getId());
+        assertNull(cache.getIfPresent(1));
+        assertFalse(cache.getBookById(1).isAvailable());
+
+        db.deleteBook(1);
+        assertNull(cache.getIfPresent(1));
+        assertNull(cache.getBookById(1));
+        assertEquals(1, cache.stats().books().hits());
+    }
+
+    @Test
+    void borrowerNamesExpire() throws SQLException {
+        CatalogCache forever = new CatalogCache(db, 16, 16, Duration.ofDays(1));
+        CatalogCache expiring = new CatalogCache(db, 16, 16, Duration.ZERO);
+        assertEquals("Ada", forever.getBorrowerName(user.getId()));
+        assertEquals("Ada", expiring.getBorrowerName(user.getId()));
+
+        try (ConnectionPool.PooledConnection conn = pool.acquireWriter("test");
+             Statement stmt = conn.connection().createStatement()) {
+            stmt.execute("UPDATE users SET name = 'Ada Lovelace'");
+        }
+
+        assertEquals("Ada", forever.getBorrowerName(user.getId()));
+        assertEquals("Ada Lovelace", expiring.getBorrowerName(user.getId()));
+        assertEquals(2, expiring.stats().users().misses());
+    }
+}
@@ -0,0 +1,47 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CatalogIndexTest {
+    @TempDir
+    Path temp;
+
+    @Test
+    @Timeout(30)
+    void sortsByTitleOnceRankedAndInSnapshotOrderBefore() throws IOException {
+        CatalogIndex index = CatalogIndex.build(snapshot(
+                new CatalogRow(1, "émile", "Rousseau", null, 0, "Available"),
+                new CatalogRow(2, "Dune", "Herbert", null, 0, "Available"),
+                new CatalogRow(3, "Beloved", "Morrison", null, 0, "Available")));
+        CatalogSort byTitle = new CatalogSort(CatalogColumn.TITLE, false);
+
+        assertFalse(index.canSortBy(CatalogColumn.TITLE));
+        assertTrue(index.canSortBy(CatalogColumn.ID));
+        assertArrayEquals(new int[] {0, 1, 2}, index.query(CatalogIndex.Filter.NONE, byTitle));
+
+        index.rankInBackground().join();
+
+        assertTrue(index.canSortBy(CatalogColumn.TITLE));
+        assertTrue(index.canSortBy(CatalogColumn.AUTHOR));
+        assertArrayEquals(new int[] {0, 1, 2}, index.query(CatalogIndex.Filter.NONE, byTitle));
+        assertArrayEquals(new int[] {2, 1, 0}, index.query(CatalogIndex.Filter.NONE, new CatalogSort(CatalogColumn.TITLE, true)));
+        assertArrayEquals(new int[] {1, 2, 0}, index.query(CatalogIndex.Filter.NONE, new CatalogSort(CatalogColumn.AUTHOR, true)));
+    }
+
+    private CatalogSnapshot snapshot(CatalogRow... rows) throws IOException {
+        Path file = temp.resolve("library.db.snapshot");
+        CatalogSnapshot.Writer writer = new CatalogSnapshot.Writer();
+        for (CatalogRow row : rows) writer.add(row);
+        writer.write(file, 1);
+        return CatalogSnapshot.open(file);
+    }
+}
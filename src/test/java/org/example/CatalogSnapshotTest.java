@@ -0,0 +1,72 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CatalogSnapshotTest {
+    @TempDir
+    Path temp;
+
+    @Test
+    void roundTripsRowsAndBorrowerNames() throws IOException {
+        Path file = temp.resolve("library.db.snapshot");
+        write(file, 7, new CatalogRow(2, "Dune", "Herbert", null, 0, "Available"),
+                new CatalogRow(1, "Émile", "Rousseau", "file:///cover.png", 3, "Ada"));
+
+        CatalogSnapshot snapshot = CatalogSnapshot.open(file);
+
+        assertEquals(7, snapshot.version());
+        assertEquals(List.of(new CatalogRow(2, "Dune", "Herbert", null, 0, "Available"),
+                new CatalogRow(1, "Émile", "Rousseau", "file:///cover.png", 3, "Ada")), snapshot.rows(0, 2));
+    }
+
+    @Test
+    void rewritingLeavesAnOpenSnapshotReadable() throws IOException {
+        Path file = temp.resolve("library.db.snapshot");
+        write(file, 1, new CatalogRow(1, "Old", "A", null, 0, "Available"));
+        CatalogSnapshot first = CatalogSnapshot.open(file);
+
+        write(file, 2, new CatalogRow(1, "New", "B", null, 0, "Available"));
+        write(file, 3, new CatalogRow(1, "Newer", "C", null, 0, "Available"));
+
+        assertEquals("Old", first.row(0).title());
+        CatalogSnapshot latest = CatalogSnapshot.open(file);
+        assertEquals(3, latest.version());
+        assertEquals("Newer", latest.row(0).title());
+        assertEquals(1, dataFiles().size(), "old data files are cleaned up");
+
+        CatalogSnapshot.delete(file);
+        assertEquals(List.of(), dataFiles());
+        assertNull(CatalogSnapshot.open(file));
+    }
+
+    @Test
+    void ignoresAManifestThatPointsElsewhere() throws IOException {
+        Path file = temp.resolve("library.db.snapshot");
+        Files.writeString(temp.resolve("library.db"), "not a snapshot");
+        Files.writeString(file, "library.db");
+
+        assertNull(CatalogSnapshot.open(file));
+    }
+
+    private static void write(Path file, long version, CatalogRow... rows) throws IOException {
+        CatalogSnapshot.Writer writer = new CatalogSnapshot.Writer();
+        for (CatalogRow row : rows) writer.add(row);
+        writer.write(file, version);
+    }
+
+    private List<Path> dataFiles() throws IOException {
+        try (Stream<Path> files = Files.list(temp)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".data")).toList();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoverImageCacheTest {
+    private static final long ONE_COVER = (long) CoverImageCache.COVER_WIDTH * CoverImageCache.COVER_HEIGHT * 4;
+
+    @TempDir
+    Path temp;
+    private Path thumbnails;
+    private HttpServer server;
+    private final AtomicInteger downloads = new AtomicInteger();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        thumbnails = temp.resolve("covers");
+        byte[] png = png(Color.RED, 40, 60);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            downloads.incrementAndGet();
+            exchange.sendResponseHeaders(200, png.length);
+            exchange.getResponseBody().write(png);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void scalesCoversAndServesRepeatsFromMemory() throws Exception {
+        CoverImageCache cache = new CoverImageCache(thumbnails, 16 * ONE_COVER, Runnable::run);
+        String url = url("/a.png");
+
+        BufferedImage first = cache.load(url).get();
+        BufferedImage second = cache.load(url).get();
+
+        assertEquals(CoverImageCache.COVER_WIDTH, first.getWidth());
+        assertEquals(CoverImageCache.COVER_HEIGHT, first.getHeight());
+        assertSame(first, second);
+        assertEquals(1, downloads.get());
+        CoverImageCache.Stats stats = cache.stats();
+        assertEquals(1, stats.misses());
+        assertEquals(1, stats.memoryHits());
+        assertEquals(ONE_COVER, stats.bytes());
+    }
+
+    @Test
+    void thumbnailsOnDiskSurviveARestart() throws Exception {
+        String url = url("/a.png");
+        new CoverImageCache(thumbnails, 16 * ONE_COVER, Runnable::run).load(url).get();
+
+        CoverImageCache restarted = new CoverImageCache(thumbnails, 16 * ONE_COVER, Runnable::run);
+        BufferedImage image = restarted.load(url).get();
+
+        assertEquals(CoverImageCache.COVER_WIDTH, image.getWidth());
+        assertEquals(1, downloads.get());
+        assertEquals(1, restarted.stats().diskHits());
+        assertEquals(0, restarted.stats().misses());
+    }
+
+    @Test
+    void concurrentRequestsForOneUrlShareALoad() throws Exception {
+        List<Runnable> queued = new ArrayList<>();
+        CoverImageCache cache = new CoverImageCache(thumbnails, 16 * ONE_COVER, queued::add);
+        String url = url("/a.png");
+
+        CompletableFuture<BufferedImage> first = cache.load(url);
+        CompletableFuture<BufferedImage> second = cache.load(url);
+        assertSame(first, second);
+        assertEquals(1, queued.size());
+
+        queued.get(0).run();
+        assertNotNull(first.get());
+        assertEquals(1, downloads.get());
+    }
+
+    @Test
+    void memoryIsBoundedByBytesAndEvictsTheLeastRecentlyUsed() throws Exception {
+        CoverImageCache cache = new CoverImageCache(thumbnails, 2 * ONE_COVER, Runnable::run);
+        String a = url("/a.png");
+        String b = url("/b.png");
+        String c = url("/c.png");
+
+        cache.load(a).get();
+        cache.load(b).get();
+        cache.getIfPresent(a); // b is now the least recently used
+        cache.load(c).get();
+
+        CoverImageCache.Stats stats = cache.stats();
+        assertEquals(2, stats.entries());
+        assertEquals(2 * ONE_COVER, stats.bytes());
+        assertEquals(1, stats.evictions());
+        assertTrue(cache.contains(a));
+        assertFalse(cache.contains(b));
+        assertTrue(cache.contains(c));
+    }
+
+    @Test
+    void readsLocalFiles() throws Exception {
+        Path file = temp.resolve("cover.png");
+        Files.write(file, png(Color.BLUE, 300, 450));
+        CoverImageCache cache = new CoverImageCache(thumbnails, 16 * ONE_COVER, Runnable::run);
+
+        BufferedImage image = cache.load(file.toUri().toString()).get();
+
+        assertEquals(Color.BLUE.getRGB(), image.getRGB(100, 150));
+        assertEquals(1, cache.stats().misses());
+    }
+
+    @Test
+    void failedLoadsAreCountedAndNotCached() {
+        CoverImageCache cache = new CoverImageCache(thumbnails, 16 * ONE_COVER, Runnable::run);
+        String missing = temp.resolve("missing.png").toUri().toString();
+
+        assertThrows(ExecutionException.class, () -> cache.load(missing).get());
+        assertThrows(ExecutionException.class, () -> cache.load(missing).get());
+
+        assertEquals(2, cache.stats().failures());
+        assertFalse(cache.contains(missing));
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private static byte[] png(Color color, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,101 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// A writer thread that died would leave execute() waiting forever.
+@Timeout(30)
+class GroupCommitWriterTest {
+    @TempDir
+    Path temp;
+    private ConnectionPool pool;
+    private GroupCommitWriter writer;
+
+    @BeforeEach
+    void open() throws SQLException {
+        pool = new ConnectionPool("jdbc:sqlite:" + temp.resolve("library.db"), 1);
+        try (ConnectionPool.PooledConnection conn = pool.acquireWriter("test");
+             Statement stmt = conn.connection().createStatement()) {
+            stmt.execute("CREATE TABLE t (id INTEGER PRIMARY KEY)");
+        }
+        // A long window, so everything submitted below lands in one batch.
+        writer = pool.enableGroupCommit(new GroupCommitWriter.Config(16, Duration.ofMillis(200)));
+    }
+
+    @AfterEach
+    void close() {
+        pool.close();
+    }
+
+    @Test
+    void aFailingMutationIsRolledBackAloneAndTheRestCommit() throws Exception {
+        CompletableFuture<Integer> first = writer.submit(insert(1));
+        CompletableFuture<Integer> sqlFailure = writer.submit(conn -> {
+            insert(2).apply(conn);
+            return conn.prepare("INSERT INTO t(id) VALUES (1)").executeUpdate();
+        });
+        CompletableFuture<Integer> runtimeFailure = writer.submit(conn -> {
+            insert(3).apply(conn);
+            throw new IllegalStateException("bug in a mutation");
+        });
+        CompletableFuture<Integer> last = writer.submit(insert(4));
+
+        assertEquals(1, first.get(5, TimeUnit.SECONDS));
+        assertEquals(1, last.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(SQLException.class, cause(sqlFailure));
+        assertInstanceOf(IllegalStateException.class, cause(runtimeFailure));
+        assertEquals(1, writer.commits());
+        assertEquals("1,4", ids());
+    }
+
+    @Test
+    void theWriterKeepsRunningAfterAMutationThrows() throws Exception {
+        assertThrows(IllegalStateException.class, () -> writer.execute(conn -> {
+            throw new IllegalStateException("bug in a mutation");
+        }));
+
+        assertEquals(1, writer.execute(insert(5)));
+        assertEquals("5", ids());
+    }
+
+    private static GroupCommitWriter.Mutation<Integer> insert(int id) {
+        return conn -> {
+            var pstmt = conn.prepare("INSERT INTO t(id) VALUES (?)");
+            pstmt.setInt(1, id);
+            return pstmt.executeUpdate();
+        };
+    }
+
+    private static Throwable cause(CompletableFuture<?> future) {
+        return assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS)).getCause();
+    }
+
+    private String ids() throws SQLException {
+        StringBuilder ids = new StringBuilder();
+        try (ConnectionPool.PooledConnection conn = pool.acquireReader("test");
+             Statement stmt = conn.connection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id FROM t ORDER BY id")) {
+            while (rs.next()) {
+                if (!ids.isEmpty()) ids.append(',');
+                ids.append(rs.getInt(1));
+            }
+        }
+        return ids.toString();
+    }
+}
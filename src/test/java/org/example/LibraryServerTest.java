@@ -0,0 +1,127 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LibraryServerTest {
+    @TempDir
+    Path temp;
+    private ConnectionPool pool;
+    private LibraryServer server;
+    private final HttpClient http = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void start() throws IOException {
+        pool = new ConnectionPool("jdbc:sqlite:" + temp.resolve("library.db"), 2);
+        DatabaseManager db = new DatabaseManager(pool);
+        db.initializeDatabase();
+        db.registerUser("Ada", "ada@example.org", "ada-secret");
+        db.registerUser("Bob", "bob@example.org", "bob-secret");
+        db.addBook("Dune", "Herbert", null);
+        server = new LibraryServer(db, 0);
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.close();
+        pool.close();
+    }
+
+    @Test
+    void listensOnLoopbackOnly() {
+        assertTrue(server.baseUri().getHost().equals("127.0.0.1") || server.baseUri().getHost().equals("[::1]"),
+                server.baseUri().toString());
+    }
+
+    @Test
+    void onlyTheBorrowerCanReturnABook() throws Exception {
+        String ada = login("ada@example.org", "ada-secret");
+        String bob = login("bob@example.org", "bob-secret");
+        assertEquals(200, post("books/1/borrow", ada).statusCode());
+
+        HttpResponse<String> stolen = post("books/1/return", bob);
+        assertEquals(403, stolen.statusCode());
+        assertTrue(stolen.body().contains("BORROWED_BY_SOMEONE_ELSE"), stolen.body());
+
+        assertEquals(200, post("books/1/return", ada).statusCode());
+        assertEquals(409, post("books/1/return", ada).statusCode());
+    }
+
+    @Test
+    void pagesFollowTheNextCursor() throws Exception {
+        DatabaseManager db = new DatabaseManager(pool);
+        db.addBook("Beloved", "Morrison", null);
+        db.addBook("Emma", "Austen", null);
+
+        HttpResponse<String> first = get("books?sort=title&limit=2");
+        assertEquals(200, first.statusCode(), first.body());
+        assertTrue(first.body().matches(".*\"title\":\"Beloved\".*\"title\":\"Dune\".*"), first.body());
+        String next = Json.parseObject(first.body()).get("next");
+
+        HttpResponse<String> second = get("books?sort=title&limit=2&after=" + next);
+        assertEquals(200, second.statusCode(), second.body());
+        assertTrue(second.body().contains("\"title\":\"Emma\""), second.body());
+        assertFalse(second.body().contains("Dune"), second.body());
+        assertFalse(second.body().contains("\"next\""), second.body());
+
+        assertEquals(400, get("books?sort=author&limit=2&after=" + next + "&offset=2").statusCode());
+        assertEquals(400, get("books?sort=id&after=" + next).statusCode());
+    }
+
+    @Test
+    void databaseFailuresAreServiceUnavailable() throws Exception {
+        pool.close();
+        assertEquals(503, get("books").statusCode());
+        assertEquals(503, get("books/search?q=dune").statusCode());
+        assertEquals(503, get("books/1").statusCode());
+    }
+
+    @Test
+    void malformedEscapesInTheQueryAreABadRequest() throws Exception {
+        // java.net.URI refuses to build such a request, so it is written by hand.
+        try (Socket socket = new Socket(server.baseUri().getHost().replaceAll("[\\[\\]]", ""), server.getPort())) {
+            socket.getOutputStream().write("GET /api/books?offset=%zz HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+                    .getBytes(StandardCharsets.US_ASCII));
+            String status = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII)).readLine();
+            assertEquals("HTTP/1.1 400 Bad Request", status);
+        }
+    }
+
+    private String login(String email, String password) throws Exception {
+        String body = "{\"email\":\"" + email + "\",\"password\":\"" + password + "\"}";
+        HttpResponse<String> response = http.send(HttpRequest.newBuilder(server.baseUri().resolve("login"))
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode(), response.body());
+        Map<String, String> fields = Json.parseObject(response.body());
+        return fields.get("token");
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        return http.send(HttpRequest.newBuilder(server.baseUri().resolve(path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String path, String token) throws Exception {
+        URI uri = server.baseUri().resolve(path);
+        return http.send(HttpRequest.newBuilder(uri).header("Authorization", "Bearer " + token)
+                .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,27 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.EnumSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MaintenanceSchedulerTest {
+    @Test
+    void vacuumAndBackupsAreOptIn() {
+        Path database = Path.of("library.db");
+        assertEquals(EnumSet.of(MaintenanceScheduler.Task.OPTIMIZE, MaintenanceScheduler.Task.INTEGRITY_CHECK),
+                MaintenanceScheduler.Config.fromSystemProperties(database).tasks());
+
+        System.setProperty("library.maintenance.vacuum", "true");
+        System.setProperty("library.maintenance.backup", "true");
+        try {
+            assertEquals(EnumSet.allOf(MaintenanceScheduler.Task.class),
+                    MaintenanceScheduler.Config.fromSystemProperties(database).tasks());
+        } finally {
+            System.clearProperty("library.maintenance.vacuum");
+            System.clearProperty("library.maintenance.backup");
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PasswordHasherTest {
+    @TempDir
+    Path temp;
+
+    @Test
+    void sharedHasherTakesItsCostFromTheSystemProperty() {
+        assertEquals(Integer.getInteger("library.password.iterations", PasswordHasher.DEFAULT_ITERATIONS), PasswordHasher.shared().getIterations());
+    }
+
+    @Test
+    void verifiesOnlyTheRightPassword() {
+        try (PasswordHasher hasher = new PasswordHasher(1000, 1)) {
+            String hash = hasher.hash("secret");
+            assertTrue(PasswordHasher.isHash(hash), hash);
+            assertTrue(hasher.verify("secret", hash));
+            assertFalse(hasher.verify("Secret", hash));
+            assertFalse(hasher.verify("secret", null));
+            assertFalse(hasher.verify("secret", "secret"));
+        }
+    }
+
+    @Test
+    void asksForARehashBelowTheCurrentCost() {
+        try (PasswordHasher cheap = new PasswordHasher(500, 1); PasswordHasher current = new PasswordHasher(1000, 1)) {
+            String old = cheap.hash("secret");
+            assertTrue(current.needsRehash(old));
+            assertFalse(current.needsRehash(current.hash("secret")));
+            assertTrue(current.needsRehash("secret"));
+            // The cost is read from the hash, so an old hash still verifies.
+            assertTrue(current.verify("secret", old));
+        }
+    }
+
+    @Test
+    void unknownUsersTakeAsLongAsWrongPasswords() {
+        try (PasswordHasher hasher = new PasswordHasher(200_000, 1)) {
+            String hash = hasher.hash("secret");
+            long wrongPassword = Long.MAX_VALUE;
+            long noHash = Long.MAX_VALUE;
+            for (int i = 0; i < 3; i++) {
+                long start = System.nanoTime();
+                hasher.verify("guess", hash);
+                wrongPassword = Math.min(wrongPassword, System.nanoTime() - start);
+                start = System.nanoTime();
+                hasher.verify("guess", null);
+                noHash = Math.min(noHash, System.nanoTime() - start);
+            }
+            assertTrue(noHash > wrongPassword / 2, "no hash " + noHash / 1_000_000 + " ms, wrong password " + wrongPassword / 1_000_000 + " ms");
+        }
+    }
+
+    @Test
+    @Timeout(60)
+    void aFullQueueTurnsWorkAway() {
+        try (PasswordHasher hasher = new PasswordHasher(100_000, 1)) {
+            // One running and 32 queued fill the pool of one thread.
+            List<CompletableFuture<String>> hashes = new ArrayList<>();
+            for (int i = 0; i < 34; i++) hashes.add(hasher.hashAsync("secret" + i));
+
+            CompletableFuture<String> turnedAway = hashes.get(33);
+            assertTrue(turnedAway.isCompletedExceptionally());
+            CompletionException e = assertThrows(CompletionException.class, turnedAway::join);
+            assertInstanceOf(RejectedExecutionException.class, e.getCause());
+            for (CompletableFuture<String> hash : hashes.subList(0, 33)) {
+                assertTrue(PasswordHasher.isHash(hash.join()));
+            }
+        }
+    }
+
+    @Test
+    @Timeout(30)
+    void loginUpgradesAnOldHash() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool("jdbc:sqlite:" + temp.resolve("library.db"), 2);
+             PasswordHasher cheap = new PasswordHasher(500, 1)) {
+            DatabaseManager db = new DatabaseManager(pool);
+            db.initializeDatabase();
+            User ada = db.registerUser("Ada", "ada@example.org", "secret");
+            setPassword(pool, ada.getId(), cheap.hash("secret"));
+
+            assertNull(db.loginUser("ada@example.org", "wrong"));
+            assertTrue(PasswordHasher.shared().needsRehash(password(pool, ada.getId())));
+            assertNotNull(db.loginUser("ada@example.org", "secret"));
+
+            // The new hash is written in the background after the login returns.
+            while (PasswordHasher.shared().needsRehash(password(pool, ada.getId()))) {
+                Thread.sleep(10);
+            }
+            assertNotNull(db.loginUser("ada@example.org", "secret"));
+        }
+    }
+
+    private static void setPassword(ConnectionPool pool, int userId, String hash) throws SQLException {
+        try (ConnectionPool.PooledConnection conn = pool.acquireWriter("test")) {
+            PreparedStatement pstmt = conn.prepare("UPDATE users SET password = ? WHERE id = ?");
+            pstmt.setString(1, hash);
+            pstmt.setInt(2, userId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static String password(ConnectionPool pool, int userId) throws SQLException {
+        try (ConnectionPool.PooledConnection conn = pool.acquireReader("test")) {
+            PreparedStatement pstmt = conn.prepare("SELECT password FROM users WHERE id = ?");
+            pstmt.setInt(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+}
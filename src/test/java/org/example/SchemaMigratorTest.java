@@ -0,0 +1,225 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SchemaMigratorTest {
+    private static final String BY_TITLE = "SELECT id FROM books ORDER BY title, id";
+    private static final String BY_BORROWER = "SELECT id FROM books WHERE borrowed_by_user_id = 1";
+    private static final String LOANS = "SELECT book_id, user_id, returned FROM loans ORDER BY id";
+    private static final String USER_TOTALS = "SELECT user_id, active, total FROM user_loan_counts ORDER BY user_id";
+    private static final String DAILY_TOTALS = "SELECT SUM(borrows), SUM(returns) FROM daily_loans";
+
+    @TempDir
+    Path temp;
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void openPool() {
+        pool = new ConnectionPool("jdbc:sqlite:" + temp.resolve("library.db"), 2);
+    }
+
+    @AfterEach
+    void closePool() {
+        pool.close();
+    }
+
+    @Test
+    void upgradesAPreMigrationDatabaseAndItsQueryPlans() throws SQLException {
+        try (ConnectionPool.PooledConnection conn = pool.acquireWriter("test");
+             Statement stmt = conn.connection().createStatement()) {
+            // The schema initializeDatabase used to create, with user_version still 0.
+            stmt.execute("CREATE TABLE users (id INTEGER PRIMARY KEY, name TEXT NOT NULL, email TEXT NOT NULL UNIQUE, password TEXT NOT NULL)");
+            stmt.execute("CREATE TABLE books (id INTEGER PRIMARY KEY, title TEXT NOT NULL, author TEXT NOT NULL, image_path TEXT, borrowed_by_user_id INTEGER DEFAULT 0)");
+            stmt.execute("INSERT INTO users(id, name, email, password) VALUES (1, 'Ada', 'ada@example.org', 'secret')");
+            stmt.execute("INSERT INTO books(id, title, author, borrowed_by_user_id) VALUES (1, 'B', 'X', 0), (2, 'A', 'Y', 1), (3, 'C', 'Z', 7)");
+
+            assertTrue(plan(stmt, BY_TITLE).contains("USE TEMP B-TREE FOR ORDER BY"));
+            assertTrue(plan(stmt, BY_BORROWER).contains("SCAN books"));
+
+            assertEquals(SchemaMigrator.LATEST_VERSION, new SchemaMigrator().migrate(conn.connection()));
+
+            String byTitle = plan(stmt, BY_TITLE);
+            assertTrue(byTitle.contains("idx_books_title"), byTitle);
+            assertFalse(byTitle.contains("TEMP B-TREE"), byTitle);
+            String byBorrower = plan(stmt, BY_BORROWER);
+            assertTrue(byBorrower.contains("SEARCH books USING COVERING INDEX idx_books_borrower"), byBorrower);
+
+            // "Not borrowed" is NULL now, and the loan of a user who does not exist was cleared.
+            assertEquals("1:null,2:1,3:null", borrowers(stmt));
+        }
+    }
+
+    @Test
+    void hashesPlaintextPasswords() throws SQLException {
+        try (ConnectionPool.PooledConnection conn = pool.acquireWriter("test");
+             Statement stmt = conn.connection().createStatement()) {
+            new SchemaMigrator().migrate(conn.connection(), 4);
+            for (int i = 1; i <= 4; i++) {
+                stmt.execute("INSERT INTO users(name, email, password) VALUES ('u" + i + "', 'u" + i + "@example.org', 'secret" + i + "')");
+            }
+
+            new SchemaMigrator().migrate(conn.connection());
+
+            PasswordHasher hasher = PasswordHasher.shared();
+            try (ResultSet rs = stmt.executeQuery("SELECT id, password FROM users ORDER BY id")) {
+                while (rs.next()) {
+                    assertTrue(PasswordHasher.isHash(rs.getString(2)), rs.getString(2));
+                    assertTrue(hasher.verify("secret" + rs.getInt(1), rs.getString(2)));
+                }
+            }
+        }
+    }
+
+    @Test
+    void borrowerIsAForeignKeyToUsers() throws SQLException {
+        try (ConnectionPool.PooledConnection conn = pool.acquireWriter("test");
+             Statement stmt = conn.connection().createStatement()) {
+            new SchemaMigrator().migrate(conn.connection());
+            stmt.execute("INSERT INTO users(id, name, email, password) VALUES (1, 'Ada', 'ada@example.org', 'x')");
+            stmt.execute("INSERT INTO books(id, title, author, borrowed_by_user_id) VALUES (1, 'A', 'X', 1)");
+
+            SQLException dangling = assertThrows(SQLException.class,
+                    () -> stmt.execute("INSERT INTO books(id, title, author, borrowed_by_user_id) VALUES (2, 'B', 'Y', 9)"));
+            assertTrue(dangling.getMessage().contains("FOREIGN KEY"), dangling.getMessage());
+
+            stmt.execute("DELETE FROM users WHERE id = 1");
+            assertEquals("1:null", borrowers(stmt));
+        }
+    }
+
+    @Test
+    void loanTriggersKeepTheHistoryAndEveryTotal() throws SQLException {
+        try (ConnectionPool.PooledConnection conn = pool.acquireWriter("test");
+             Statement stmt = conn.connection().createStatement()) {
+            new SchemaMigrator().migrate(conn.connection());
+            stmt.execute("INSERT INTO users(id, name, email, password) VALUES (1, 'Ada', 'ada@example.org', 'x'), (2, 'Bob', 'bob@example.org', 'x')");
+            stmt.execute("INSERT INTO books(id, title, author) VALUES (1, 'A', 'X'), (2, 'B', 'Y')");
+
+            stmt.execute("UPDATE books SET borrowed_by_user_id = 1 WHERE id = 1");
+            // Switching borrower returns the book for one and borrows it for the other.
+            stmt.execute("UPDATE books SET borrowed_by_user_id = 2 WHERE id = 1");
+            assertEquals("1:1:0,1:1:1,1:2:0", rows(stmt, LOANS));
+            assertEquals("1:0:1,2:1:1", rows(stmt, USER_TOTALS));
+
+            stmt.execute("UPDATE books SET borrowed_by_user_id = NULL WHERE id = 1");
+            stmt.execute("UPDATE books SET borrowed_by_user_id = NULL WHERE id = 1");
+            stmt.execute("UPDATE books SET title = 'A2' WHERE id = 1");
+            stmt.execute("UPDATE books SET borrowed_by_user_id = 1 WHERE id = 2");
+            // Deleting a book on loan returns it and forgets its count.
+            stmt.execute("DELETE FROM books WHERE id = 2");
+            stmt.execute("INSERT INTO books(id, title, author, borrowed_by_user_id) VALUES (3, 'C', 'Z', 2)");
+            // ON DELETE SET NULL clears the borrower, which returns the book.
+            stmt.execute("DELETE FROM users WHERE id = 2");
+
+            assertEquals("1:1:0,1:1:1,1:2:0,1:2:1,2:1:0,2:1:1,3:2:0,3:2:1", rows(stmt, LOANS));
+            assertEquals("1:2,3:1", rows(stmt, "SELECT book_id, loans FROM book_loan_counts ORDER BY book_id"));
+            assertEquals("1:0:2,2:0:2", rows(stmt, USER_TOTALS));
+            assertEquals("4:4", rows(stmt, DAILY_TOTALS));
+        }
+    }
+
+    @Test
+    void booksOnLoanAtUpgradeCountAsOneBorrowEach() throws SQLException {
+        try (ConnectionPool.PooledConnection conn = pool.acquireWriter("test");
+             Statement stmt = conn.connection().createStatement()) {
+            new SchemaMigrator().migrate(conn.connection(), 5);
+            stmt.execute("INSERT INTO users(id, name, email, password) VALUES (1, 'Ada', 'ada@example.org', 'x')");
+            stmt.execute("INSERT INTO books(id, title, author, borrowed_by_user_id) VALUES (1, 'A', 'X', 1), (2, 'B', 'Y', NULL), (3, 'C', 'Z', 1)");
+
+            new SchemaMigrator().migrate(conn.connection());
+
+            assertEquals("1:1:0,3:1:0", rows(stmt, LOANS));
+            assertEquals("1:1,3:1", rows(stmt, "SELECT book_id, loans FROM book_loan_counts ORDER BY book_id"));
+            assertEquals("1:2:2", rows(stmt, USER_TOTALS));
+            assertEquals("2:0", rows(stmt, DAILY_TOTALS));
+
+            stmt.execute("UPDATE books SET borrowed_by_user_id = NULL WHERE id = 3");
+            assertEquals("1:1:2", rows(stmt, USER_TOTALS));
+        }
+    }
+
+    @Test
+    void migratesStepByStepAndOnlyOnce() throws SQLException {
+        try (ConnectionPool.PooledConnection conn = pool.acquireWriter("test");
+             Statement stmt = conn.connection().createStatement()) {
+            SchemaMigrator migrator = new SchemaMigrator();
+            assertEquals(2, migrator.migrate(conn.connection(), 2));
+            assertEquals(2, SchemaMigrator.currentVersion(conn.connection()));
+            assertTrue(plan(stmt, BY_BORROWER).contains("SCAN books"));
+
+            assertEquals(SchemaMigrator.LATEST_VERSION, migrator.migrate(conn.connection()));
+            assertEquals(SchemaMigrator.LATEST_VERSION, migrator.migrate(conn.connection()));
+            assertEquals(SchemaMigrator.LATEST_VERSION, SchemaMigrator.currentVersion(conn.connection()));
+        }
+    }
+
+    @Test
+    void connectionsUseTheTunedPragmas() throws SQLException {
+        try (ConnectionPool.PooledConnection conn = pool.acquireWriter("test")) {
+            new SchemaMigrator().migrate(conn.connection());
+        }
+        try (ConnectionPool.PooledConnection conn = pool.acquireReader("test");
+             Statement stmt = conn.connection().createStatement()) {
+            assertEquals("wal", pragma(stmt, "journal_mode"));
+            assertEquals("1", pragma(stmt, "synchronous"));
+            assertEquals("268435456", pragma(stmt, "mmap_size"));
+            assertEquals("-16000", pragma(stmt, "cache_size"));
+            assertEquals("1", pragma(stmt, "foreign_keys"));
+            assertEquals("2", pragma(stmt, "auto_vacuum"));
+        }
+    }
+
+    private static String plan(Statement stmt, String sql) throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        try (ResultSet rs = stmt.executeQuery("EXPLAIN QUERY PLAN " + sql)) {
+            while (rs.next()) plan.append(rs.getString("detail")).append('\n');
+        }
+        return plan.toString();
+    }
+
+    private static String borrowers(Statement stmt) throws SQLException {
+        StringBuilder rows = new StringBuilder();
+        try (ResultSet rs = stmt.executeQuery("SELECT id, borrowed_by_user_id FROM books ORDER BY id")) {
+            while (rs.next()) {
+                if (!rows.isEmpty()) rows.append(',');
+                rows.append(rs.getInt(1)).append(':').append(rs.getString(2));
+            }
+        }
+        return rows.toString();
+    }
+
+    // Every row as its columns joined by ':', rows joined by ','.
+    private static String rows(Statement stmt, String sql) throws SQLException {
+        StringBuilder rows = new StringBuilder();
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                if (!rows.isEmpty()) rows.append(',');
+                for (int i = 1; i <= columns; i++) {
+                    if (i > 1) rows.append(':');
+                    rows.append(rs.getString(i));
+                }
+            }
+        }
+        return rows.toString();
+    }
+
+    private static String pragma(Statement stmt, String name) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA " + name)) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+}
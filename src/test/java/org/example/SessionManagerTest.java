@@ -0,0 +1,54 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SessionManagerTest {
+    private final User ada = new User(1, "Ada", "ada@example.org");
+
+    @Test
+    void tokensLastUntilLoggedOut() {
+        SessionManager sessions = new SessionManager(Duration.ofHours(1));
+        String token = sessions.create(ada);
+        assertNotEquals(token, sessions.create(ada));
+
+        assertSame(ada, sessions.authenticate(token));
+        assertNull(sessions.authenticate(null));
+        assertNull(sessions.authenticate("not-a-token"));
+
+        sessions.invalidate(token);
+        assertNull(sessions.authenticate(token));
+    }
+
+    @Test
+    void everyUseExtendsTheSession() throws InterruptedException {
+        SessionManager sessions = new SessionManager(Duration.ofMillis(500));
+        String token = sessions.create(ada);
+        // Each check comes before the timeout since the last one, though not since login.
+        for (int i = 0; i < 3; i++) {
+            Thread.sleep(250);
+            assertSame(ada, sessions.authenticate(token));
+        }
+        Thread.sleep(800);
+        assertNull(sessions.authenticate(token));
+        assertEquals(0, sessions.size());
+    }
+
+    @Test
+    void abandonedSessionsArePurgedByLaterLogins() throws InterruptedException {
+        SessionManager sessions = new SessionManager(Duration.ofMillis(50), Duration.ZERO);
+        for (int i = 0; i < 3; i++) sessions.create(ada);
+        assertEquals(3, sessions.size());
+
+        Thread.sleep(100);
+        String token = sessions.create(ada);
+        assertEquals(1, sessions.size());
+        assertSame(ada, sessions.authenticate(token));
+    }
+}